@@ -46,4 +46,25 @@ class CanvasMouseMotionListener extends MouseMotionAdapter {
     public void mouseDragged(MouseEvent e) {
         canvasPanel.handleMouseDragged(e);
     }
+}
+
+/**
+ * 滑鼠滾輪事件監聽器
+ * 負責處理畫布的縮放與捲動
+ */
+class CanvasMouseWheelListener implements MouseWheelListener {
+    private final CanvasPanel canvasPanel;
+
+    /**
+     * 建構函數
+     * @param canvasPanel 關聯的畫布面板
+     */
+    public CanvasMouseWheelListener(CanvasPanel canvasPanel) {
+        this.canvasPanel = canvasPanel;
+    }
+
+    @Override
+    public void mouseWheelMoved(MouseWheelEvent e) {
+        canvasPanel.handleMouseWheelMoved(e);
+    }
 }
\ No newline at end of file
@@ -3,7 +3,11 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import Shapes.*;
 
 /**
@@ -27,6 +31,18 @@ public class CanvasPanel extends JPanel {
     private int nextDepth = 0; // 下一個形狀的深度值
     private int DeltaX = 0;
     private int DeltaY = 0;
+    private SpatialIndex spatialIndex = new SpatialIndex(); // 點選查詢用的空間索引
+    private LinkUpdater linkUpdater = new LinkUpdater(); // 找出形狀移動時受影響的連結
+    private DirtyRegion dirtyRegion = new DirtyRegion(); // 本次操作需要重繪的區域
+    private LayeredRenderer layeredRenderer = new LayeredRenderer(); // 拖曳時的分層繪製器
+    private Viewport viewport = new Viewport(); // 縮放與捲動狀態
+    private static final double ZOOM_STEP = 1.1; // 每格滾輪的縮放倍率
+    private static final int SCROLL_STEP = 40; // 每格滾輪的捲動像素
+    private RegionLoader regionLoader; // 延遲載入的圖檔來源，null 表示所有形狀都已在記憶體中
+    private static final int HISTORY_DEPTH = 100; // 預設保存的復原步數
+    private CommandHistory history = new CommandHistory(HISTORY_DEPTH); // 復原 / 重做紀錄
+    private static final ChangeJournal NO_JOURNAL = new ChangeJournal() {};
+    private ChangeJournal journal = NO_JOURNAL; // 記錄畫布變動（自動儲存）
 
     // 使用模式處理不同的操作
     private ModeHandler modeHandler;
@@ -36,6 +52,7 @@ public class CanvasPanel extends JPanel {
     // 獨立的事件監聽器
     private CanvasMouseListener mouseListener;
     private CanvasMouseMotionListener mouseMotionListener;
+    private CanvasMouseWheelListener mouseWheelListener;
 
     /**
      * 建構函數
@@ -66,6 +83,7 @@ public class CanvasPanel extends JPanel {
         // 初始化事件監聽器
         mouseListener = new CanvasMouseListener(this);
         mouseMotionListener = new CanvasMouseMotionListener(this);
+        mouseWheelListener = new CanvasMouseWheelListener(this);
     }
 
     /**
@@ -74,42 +92,433 @@ public class CanvasPanel extends JPanel {
     private void setupEventListeners() {
         addMouseListener(mouseListener);
         addMouseMotionListener(mouseMotionListener);
+        addMouseWheelListener(mouseWheelListener);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                refreshLoadedRegion();
+            }
+        });
     }
 
     /**
      * 處理滑鼠拖曳事件
      */
     public void handleMouseDragged(MouseEvent e) {
-        Point currentPoint = e.getPoint();
+        Point currentPoint = viewport.toModel(e.getPoint());
+        if (currentMode == Mode.SELECT && !selectedShapes.isEmpty() && !layeredRenderer.isActive()) {
+            // 拖曳期間只有選取的物件會變動，其餘形狀改由背景影像繪製
+            layeredRenderer.begin(shapes, selectedShapes);
+        }
+        markTouchedShapesDirty();
         modeHandler.handleDrag(currentMode, currentPoint, this);
-        repaint();
+        markTouchedShapesDirty();
+        repaintDirtyRegion();
     }
 
     /**
      * 處理滑鼠按下事件
      */
     public void handleMousePressed(MouseEvent e) {
-        startPoint = e.getPoint();
+        startPoint = viewport.toModel(e.getPoint());
+        history.seal(); // 每次按下滑鼠都是新的一筆操作
+        layeredRenderer.invalidate();
+        markTouchedShapesDirty();
         modeHandler.handlePress(currentMode, startPoint, this);
-        repaint();
+        pinTouchedShapes();
+        markTouchedShapesDirty();
+        repaintDirtyRegion();
     }
 
     /**
      * 處理滑鼠釋放事件
      */
     public void handleMouseReleased(MouseEvent e) {
-        Point endPoint = e.getPoint();
+        Point endPoint = viewport.toModel(e.getPoint());
+        markTouchedShapesDirty();
         modeHandler.handleRelease(currentMode, endPoint, this);
+        pinTouchedShapes();
+        markTouchedShapesDirty();
         currentShape = null;
+        history.seal();
+        if (layeredRenderer.isActive()) {
+            // 拖曳結束，移動的形狀回到原本的繪製順序
+            layeredRenderer.invalidate();
+            repaint();
+        } else {
+            repaintDirtyRegion();
+        }
+    }
+
+    /**
+     * 處理滑鼠滾輪事件
+     * Ctrl + 滾輪以游標為中心縮放，Shift + 滾輪水平捲動，單純滾輪垂直捲動
+     */
+    public void handleMouseWheelMoved(MouseWheelEvent e) {
+        double rotation = e.getPreciseWheelRotation();
+        if (e.isControlDown()) {
+            if (!viewport.zoomAt(e.getPoint(), Math.pow(ZOOM_STEP, -rotation))) {
+                return;
+            }
+        } else if (e.isShiftDown()) {
+            viewport.scrollBy((int) Math.round(rotation * SCROLL_STEP), 0);
+        } else {
+            viewport.scrollBy(0, (int) Math.round(rotation * SCROLL_STEP));
+        }
+        layeredRenderer.invalidate();
+        refreshLoadedRegion();
+        repaint();
+    }
+
+    /**
+     * 回到原始的縮放比例與位置
+     */
+    public void resetViewport() {
+        viewport.reset();
+        layeredRenderer.invalidate();
+        refreshLoadedRegion();
+        repaint();
+    }
+
+    /**
+     * 開啟延遲載入的圖檔
+     * 只有進入可視範圍的區域會建立形狀物件
+     * @param loader 圖檔來源
+     */
+    public void openLazyDiagram(RegionLoader loader) {
+        clearAll();
+        journal.suspend(); // 延遲載入時畫布只有部分形狀，無法記錄完整的變動
+        regionLoader = loader;
+        nextDepth = loader.getNextDepth();
+        refreshLoadedRegion();
+    }
+
+    /**
+     * 載入延遲載入圖檔的所有區域，之後畫布不再釋放任何形狀
+     * 儲存或匯出整份圖形前呼叫
+     */
+    public void loadAllRegions() {
+        if (regionLoader != null) {
+            regionLoader.loadAll();
+            applyRegionChange();
+            regionLoader = null;
+            journal.reset(shapes, nextDepth);
+        }
+    }
+
+    /**
+     * 依目前的可視範圍載入或釋放延遲載入圖檔的區域
+     */
+    private void refreshLoadedRegion() {
+        if (regionLoader == null) {
+            return;
+        }
+        Rectangle visibleArea = viewport.toModel(new Rectangle(0, 0, getWidth(), getHeight()));
+        if (regionLoader.update(visibleArea)) {
+            applyRegionChange();
+        }
+    }
+
+    /**
+     * 將載入與釋放的形狀套用到形狀列表
+     * 新載入的形狀依檔案順序插入，使用者新增的形狀保持在原本的位置
+     */
+    private void applyRegionChange() {
+        List<BaseShape> evicted = regionLoader.takeEvictedShapes();
+        List<BaseShape> loaded = regionLoader.takeLoadedShapes();
+
+        if (!evicted.isEmpty()) {
+            Set<BaseShape> evictedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            evictedSet.addAll(evicted);
+            shapes.removeIf(evictedSet::contains);
+        }
+
+        if (!loaded.isEmpty()) {
+            List<BaseShape> merged = new ArrayList<>(shapes.size() + loaded.size());
+            int next = 0;
+            int insertAt = 0; // 最後一個檔案形狀之後的位置
+            for (BaseShape shape : shapes) {
+                int order = regionLoader.orderOf(shape);
+                if (order >= 0) {
+                    while (next < loaded.size() && regionLoader.orderOf(loaded.get(next)) < order) {
+                        merged.add(loaded.get(next++));
+                    }
+                    merged.add(shape);
+                    insertAt = merged.size();
+                } else {
+                    merged.add(shape);
+                }
+            }
+            merged.addAll(insertAt, loaded.subList(next, loaded.size()));
+            shapes.clear();
+            shapes.addAll(merged);
+        }
+
+        spatialIndex.rebuild(shapes);
+        layeredRenderer.invalidate();
+        repaint();
+    }
+
+    /**
+     * 固定被選取或被連結到的形狀，延遲載入時不會被釋放
+     */
+    private void pinTouchedShapes() {
+        if (regionLoader == null) {
+            return;
+        }
+        for (BaseShape shape : selectedShapes) {
+            regionLoader.pin(shape);
+        }
+        if (currentShape instanceof Link link) {
+            regionLoader.pin(link.getStartShape());
+            regionLoader.pin(link.getEndShape());
+        }
+    }
+
+    /**
+     * 固定歷史命令參考的形狀
+     * 被釋放的紀錄重新載入時會解碼成另一個物件，復原與重做就找不到命令記錄的形狀
+     */
+    private void pinReferencedShapes(List<BaseShape> referenced) {
+        if (regionLoader == null) {
+            return;
+        }
+        for (BaseShape shape : referenced) {
+            regionLoader.pin(shape);
+        }
+    }
+
+    /**
+     * 將本次操作可能改變的形狀標記為需要重繪
+     * 包含選取的形狀、與其相連的連結以及當前操作的形狀（如選取框）
+     * 在操作前後各呼叫一次，即可涵蓋舊位置與新位置
+     */
+    private void markTouchedShapesDirty() {
+        for (BaseShape shape : selectedShapes) {
+            dirtyRegion.add(shape);
+            markConnectedLinksDirty(shape);
+        }
+        dirtyRegion.add(currentShape);
+    }
+
+    /**
+     * 將連接到形狀（或群組內形狀）的連結標記為需要重繪
+     */
+    private void markConnectedLinksDirty(BaseShape shape) {
+        if (shape instanceof BasicShape basicShape) {
+            for (Link link : basicShape.getConnectedLinks()) {
+                dirtyRegion.add(link);
+            }
+        } else if (shape instanceof CompositeShape group) {
+            for (BaseShape leaf : group.getLeafShapes()) {
+                markConnectedLinksDirty(leaf);
+            }
+        }
+    }
+
+    /**
+     * 只重繪累積的髒區域
+     */
+    private void repaintDirtyRegion() {
+        Rectangle region = dirtyRegion.take();
+        if (region != null) {
+            repaint(viewport.toScreen(region));
+        }
+    }
+
+    /**
+     * 拖曳時移動所有選取的形狀，並累加到同一筆移動命令
+     * @param dx x軸位移量
+     * @param dy y軸位移量
+     */
+    public void moveSelection(int dx, int dy) {
+        translateShapes(selectedShapes, dx, dy);
+        recordMove(dx, dy);
+    }
+
+    /**
+     * 移動一批形狀並更新相關連結，復原與重做移動時使用
+     */
+    void moveShapes(BaseShape[] movedShapes, int dx, int dy) {
+        List<BaseShape> moved = Arrays.asList(movedShapes);
+        translateShapes(moved, dx, dy);
+        journal.moved(moved, dx, dy);
+        layeredRenderer.invalidate();
         repaint();
     }
 
     /**
-     * 處理形狀移動時，更新所有相關連結的位置
+     * 平移一批形狀並更新空間索引
+     * 先收集所有受影響的連結再一起更新，連接兩個被移動形狀的連結只處理一次；
+     * 連結端點會在下次讀取時由連接埠推得，這裡不需要移動連結；
+     * 索引只記錄頂層形狀，群組內的連結改為更新所在的頂層群組，同一個群組只更新一次
+     */
+    private void translateShapes(List<BaseShape> movedShapes, int dx, int dy) {
+        Set<Link> relatedLinks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BaseShape shape : movedShapes) {
+            shape.move(dx, dy);
+            spatialIndex.update(shape);
+            linkUpdater.collectLinks(shape, relatedLinks);
+        }
+        Set<BaseShape> updated = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Link link : relatedLinks) {
+            BaseShape topLevel = link;
+            while (topLevel.getParent() != null) {
+                topLevel = topLevel.getParent();
+            }
+            if (updated.add(topLevel)) {
+                spatialIndex.update(topLevel);
+            }
+        }
+    }
+
+    /**
+     * 記錄選取形狀的一次拖曳位移
+     * 同一次拖曳的位移累加到同一筆移動命令
+     */
+    private void recordMove(int dx, int dy) {
+        journal.moved(selectedShapes, dx, dy);
+        if (history.peekOpen() instanceof MoveCommand move && move.movesSame(selectedShapes)) {
+            move.add(dx, dy);
+        } else {
+            pinReferencedShapes(selectedShapes);
+            history.record(new MoveCommand(selectedShapes.toArray(new BaseShape[0]), dx, dy));
+        }
+    }
+
+    /**
+     * 記錄新增到最上層的形狀（或完成的連結）
      */
-    public void updateLinksForShape(BaseShape shape) {
-        LinkUpdater updater = new LinkUpdater();
-        updater.updateLinksForShape(shape, shapes, DeltaX, DeltaY);
+    void recordAdd(BaseShape shape) {
+        history.record(new AddCommand(shape));
+        journal.inserted(List.of(shape), new int[] {shapes.lastIndexOf(shape)}, false);
+    }
+
+    /**
+     * 形狀列表被命令修改後，重建空間索引並重繪
+     */
+    void shapesChanged() {
+        spatialIndex.rebuild(shapes);
+        layeredRenderer.invalidate();
+        repaint();
+    }
+
+    /**
+     * 單一形狀的外觀被命令修改後，更新索引並重繪
+     */
+    void shapeChanged(BaseShape shape) {
+        spatialIndex.update(shape);
+        layeredRenderer.invalidate();
+        repaint();
+    }
+
+    CommandHistory getHistory() {
+        return history;
+    }
+
+    ChangeJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * 設定畫布變動的紀錄者，設定時會以目前的畫布內容作為起點
+     * @param journal 紀錄者，null 表示不記錄
+     */
+    public void setChangeJournal(ChangeJournal journal) {
+        this.journal = journal == null ? NO_JOURNAL : journal;
+        if (regionLoader == null) {
+            this.journal.reset(shapes, nextDepth);
+        } else {
+            this.journal.suspend();
+        }
+    }
+
+    /**
+     * 復原上一個操作
+     */
+    public void undo() {
+        clearSelection();
+        currentShape = null;
+        history.undo(this);
+    }
+
+    /**
+     * 重做上一個被復原的操作
+     */
+    public void redo() {
+        clearSelection();
+        currentShape = null;
+        history.redo(this);
+    }
+
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * 設定保存的復原步數，超過時捨棄最舊的操作
+     * @param depth 步數
+     */
+    public void setUndoDepth(int depth) {
+        history.setCapacity(depth);
+    }
+
+    /**
+     * 加入形狀到畫布最上層
+     */
+    public void addShape(BaseShape shape) {
+        shapes.add(shape);
+        spatialIndex.insert(shape);
+        layeredRenderer.invalidate();
+    }
+
+    /**
+     * 從畫布移除形狀
+     */
+    public void removeShape(BaseShape shape) {
+        shapes.remove(shape);
+        spatialIndex.remove(shape);
+        layeredRenderer.invalidate();
+    }
+
+    /**
+     * 形狀移動或改變大小後，更新其在空間索引中的位置
+     */
+    public void updateShapeIndex(BaseShape shape) {
+        spatialIndex.update(shape);
+    }
+
+    /**
+     * 根據深度從上到下找到包含指定點的形狀
+     */
+    public BaseShape findShapeAt(Point point) {
+        return spatialIndex.findTopmost(point, shape -> true);
+    }
+
+    /**
+     * 找出繪製範圍與指定區域相交的頂層形狀
+     * @return 依繪製順序排列的形狀
+     */
+    List<BaseShape> findShapesIn(Rectangle area) {
+        return spatialIndex.query(area);
+    }
+
+    /**
+     * 將形狀目前的繪製範圍標記為需要重繪，在本次滑鼠事件結束時一起重繪
+     */
+    void markDirty(BaseShape shape) {
+        dirtyRegion.add(shape);
+    }
+
+    /**
+     * 根據深度從上到下找到包含指定點的基本形狀
+     */
+    public BasicShape findBasicShapeAt(Point point) {
+        return (BasicShape) spatialIndex.findTopmost(point, shape -> shape instanceof BasicShape);
     }
 
     /**
@@ -133,6 +542,7 @@ public class CanvasPanel extends JPanel {
      */
     public void clearSelection() {
         selectionManager.clearSelection(selectedShapes);
+        layeredRenderer.invalidate();
         repaint();
     }
 
@@ -140,9 +550,33 @@ public class CanvasPanel extends JPanel {
      * 清除畫布上的所有物件
      */
     public void clearAll() {
+        regionLoader = null;
         shapes.clear();
         selectedShapes.clear();
+        spatialIndex.clear();
+        history.clear();
+        layeredRenderer.invalidate();
         nextDepth = 0;
+        journal.reset(shapes, nextDepth);
+        repaint();
+    }
+
+    /**
+     * 以載入的形狀取代畫布內容
+     * @param loadedShapes 依繪製順序排列的頂層形狀
+     * @param depth 下一個形狀的深度值
+     */
+    public void loadShapes(List<BaseShape> loadedShapes, int depth) {
+        regionLoader = null;
+        shapes.clear();
+        shapes.addAll(loadedShapes);
+        selectedShapes.clear();
+        currentShape = null;
+        spatialIndex.rebuild(shapes);
+        history.clear();
+        layeredRenderer.invalidate();
+        nextDepth = depth;
+        journal.reset(shapes, nextDepth);
         repaint();
     }
 
@@ -151,9 +585,29 @@ public class CanvasPanel extends JPanel {
      */
     public void groupSelectedShapes() {
         if (selectedShapes.size() > 1) {
+            layeredRenderer.invalidate();
+            // 記錄成員原本的位置，復原時放回
+            Set<BaseShape> selected = identitySet(selectedShapes);
+            List<BaseShape> members = new ArrayList<>(selectedShapes.size());
+            List<Integer> positions = new ArrayList<>(selectedShapes.size());
+            for (int i = 0; i < shapes.size(); i++) {
+                if (selected.contains(shapes.get(i))) {
+                    members.add(shapes.get(i));
+                    positions.add(i);
+                }
+            }
             CompositeShape group = shapeManager.createGroup(selectedShapes, shapes, nextDepth++);
             if (group != null) {
-                shapes.add(group);
+                GroupCommand command = new GroupCommand(group, members.toArray(new BaseShape[0]),
+                        toIntArray(positions), shapes);
+                pinReferencedShapes(command.referencedShapes());
+                history.record(command);
+                journal.removed(members, false);
+                for (BaseShape member : group.getShapes()) {
+                    spatialIndex.remove(member);
+                }
+                addShape(group);
+                journal.inserted(List.of(group), new int[] {shapes.size() - 1}, false);
                 selectedShapes.clear();
                 selectedShapes.add(group);
                 group.setSelected(true);
@@ -175,12 +629,27 @@ public class CanvasPanel extends JPanel {
      */
     public void ungroupSelectedShape(boolean deepUngroup) {
         if (selectedShapes.size() == 1 && selectedShapes.getFirst() instanceof CompositeShape group) {
+            layeredRenderer.invalidate();
+            int position = shapes.indexOf(group);
 
-            if (deepUngroup && shapeManager instanceof ConcreteShapeManager) { //複合式Group
+            boolean deep = deepUngroup && shapeManager instanceof ConcreteShapeManager;
+            if (deep) { //複合式Group
                 ((ConcreteShapeManager) shapeManager).deepUngroupShape(group, shapes, selectedShapes);
             } else {
                 shapeManager.ungroupShape(group, shapes, selectedShapes); //單層Group
             }
+            UngroupCommand command = new UngroupCommand(group, position,
+                    selectedShapes.toArray(new BaseShape[0]), deep, shapes);
+            pinReferencedShapes(command.referencedShapes());
+            history.record(command);
+            journal.removed(List.of(group), false);
+            journal.inserted(selectedShapes, EditCommands.appendedPositions(shapes.size(), selectedShapes.size()), false);
+
+            // 解除群組後的形狀依序加在最上層
+            spatialIndex.remove(group);
+            for (BaseShape shape : selectedShapes) {
+                spatialIndex.insert(shape);
+            }
             repaint();
         }
     }
@@ -189,8 +658,24 @@ public class CanvasPanel extends JPanel {
      * 刪除選取的形狀
      */
     public void deleteSelectedShapes() {
+        layeredRenderer.invalidate();
         ShapeDeleter deleter = new ShapeDeleter();
-        deleter.deleteShapes(selectedShapes, shapes);
+        List<BaseShape> topLevel = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<Link> detachedLinks = new ArrayList<>();
+        for (BaseShape removed : deleter.deleteShapes(selectedShapes, shapes, topLevel, positions)) {
+            spatialIndex.remove(removed);
+            if (removed instanceof Link link) {
+                detachedLinks.add(link);
+            }
+        }
+        if (!topLevel.isEmpty()) {
+            journal.removed(topLevel, true);
+            DeleteCommand command = new DeleteCommand(topLevel.toArray(new BaseShape[0]), toIntArray(positions),
+                    detachedLinks.toArray(new Link[0]), shapes);
+            pinReferencedShapes(command.referencedShapes());
+            history.record(command);
+        }
         selectedShapes.clear();
         repaint();
     }
@@ -202,7 +687,12 @@ public class CanvasPanel extends JPanel {
         if (!selectedShapes.isEmpty()) {
             BaseShape shape = selectedShapes.get(0);
             if (shape instanceof BasicShape) {
+                LabelCommand command = new LabelCommand((BasicShape) shape);
                 ((BasicShape) shape).setName(name);
+                recordLabelChange(command.completed());
+                journal.labelChanged((BasicShape) shape);
+                spatialIndex.update(shape);
+                layeredRenderer.invalidate();
                 repaint();
             }
         }
@@ -216,15 +706,43 @@ public class CanvasPanel extends JPanel {
             BaseShape baseShape = selectedShapes.get(0);
             if (baseShape instanceof BasicShape) {
                 BasicShape shape1 = (BasicShape) baseShape;
+                LabelCommand command = new LabelCommand(shape1);
                 shape1.setName(name);
                 shape1.setLabelShape(shape);
                 shape1.setLabelColor(color);
                 shape1.setFontSize(fontSize);
+                recordLabelChange(command.completed());
+                journal.labelChanged(shape1);
+                spatialIndex.update(shape1);
+                layeredRenderer.invalidate();
                 repaint();
             }
         }
     }
 
+    /**
+     * 記錄標籤修改，沒有實際改變的修改不記錄
+     */
+    private void recordLabelChange(LabelCommand command) {
+        if (!command.isNoOp()) {
+            history.record(command);
+        }
+    }
+
+    private static Set<BaseShape> identitySet(List<BaseShape> items) {
+        Set<BaseShape> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(items);
+        return set;
+    }
+
+    private static int[] toIntArray(List<Integer> values) {
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
     /**
      * 檢查是否有選取的形狀
      */
@@ -248,16 +766,28 @@ public class CanvasPanel extends JPanel {
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
+        Graphics2D g2d = (Graphics2D) g.create();
 
-        // 繪製所有形狀
-        for (BaseShape shape : shapes) {
-            shape.draw(g2d);
-        }
+        try {
+            if (layeredRenderer.isActive()) {
+                // 拖曳中：貼上背景影像，只重新繪製移動的形狀
+                layeredRenderer.paint(g2d, this, viewport.getTransform());
+            } else {
+                // 轉換到模型座標後，裁切區域即為可視範圍，範圍外的形狀不呼叫 draw
+                g2d.transform(viewport.getTransform());
+                Rectangle clip = g2d.getClipBounds();
+                List<BaseShape> visibleShapes = clip == null ? shapes : spatialIndex.query(clip);
+                for (BaseShape shape : visibleShapes) {
+                    shape.draw(g2d);
+                }
+            }
 
-        // 繪製當前正在操作的形狀（如選取框）
-        if (currentShape != null) {
-            currentShape.draw(g2d);
+            // 繪製當前正在操作的形狀（如選取框）
+            if (currentShape != null) {
+                currentShape.draw(g2d);
+            }
+        } finally {
+            g2d.dispose();
         }
     }
 
@@ -300,4 +830,97 @@ public class CanvasPanel extends JPanel {
         CompositeShape createGroup(List<BaseShape> selectedShapes, List<BaseShape> allShapes, int depth);
         void ungroupShape(CompositeShape group, List<BaseShape> allShapes, List<BaseShape> selectedShapes);
     }
+
+    /**
+     * 畫布變動紀錄 interface
+     * 每次修改頂層形狀列表或形狀內容後呼叫，所有方法預設不做任何事
+     * 形狀以頂層元素表示，群組內的子形狀隨群組一起記錄
+     */
+    public interface ChangeJournal {
+        /**
+         * 形狀被插入頂層列表
+         * @param shapes 插入的形狀
+         * @param positions 插入後各形狀在列表中的位置（遞增）
+         * @param restored 是否為復原刪除，形狀內的連結重新連接到端點形狀
+         */
+        default void inserted(List<BaseShape> shapes, int[] positions, boolean restored) {
+        }
+
+        /**
+         * 形狀從頂層列表移除
+         * @param shapes 移除的形狀
+         * @param deleted 是否為刪除，形狀內的連結從端點形狀拆離
+         */
+        default void removed(List<BaseShape> shapes, boolean deleted) {
+        }
+
+        /**
+         * 頂層形狀被移動，連接的連結已跟著更新
+         */
+        default void moved(List<BaseShape> shapes, int dx, int dy) {
+        }
+
+        /**
+         * 形狀的名稱或標籤樣式被修改
+         */
+        default void labelChanged(BasicShape shape) {
+        }
+
+        /**
+         * 畫布內容被整個取代
+         * @param shapes 新的頂層形狀
+         * @param nextDepth 下一個形狀的深度值
+         */
+        default void reset(List<BaseShape> shapes, int nextDepth) {
+        }
+
+        /**
+         * 畫布內容不完整（延遲載入），在下一次 reset 之前停止記錄
+         */
+        default void suspend() {
+        }
+    }
+
+    /**
+     * 延遲載入的圖檔來源 interface
+     * 依可視範圍決定哪些頂層形狀需要建立，哪些可以釋放
+     */
+    public interface RegionLoader {
+        /**
+         * 依可視範圍載入或釋放區域
+         * @param visibleArea 可視範圍（模型座標）
+         * @return 是否有形狀被載入或釋放
+         */
+        boolean update(Rectangle visibleArea);
+
+        /**
+         * 載入所有尚未載入的區域，之後不再釋放
+         */
+        void loadAll();
+
+        /**
+         * 取出上次更新後新載入的頂層形狀（依檔案順序）
+         */
+        List<BaseShape> takeLoadedShapes();
+
+        /**
+         * 取出上次更新後被釋放的頂層形狀
+         */
+        List<BaseShape> takeEvictedShapes();
+
+        /**
+         * 取得頂層形狀在檔案中的順序，不是從檔案載入的形狀回傳 -1
+         */
+        int orderOf(BaseShape shape);
+
+        /**
+         * 固定形狀所在的區域，不再釋放
+         */
+        void pin(BaseShape shape);
+
+        /**
+         * 取得下一個形狀的深度值
+         */
+        int getNextDepth();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+package Canvas;
+
+/**
+ * 復原 / 重做紀錄
+ * 以環狀緩衝區保存最近的編輯命令，超過容量時捨棄最舊的命令
+ * 命令只記錄變動的差異（移動量、群組成員、原本的位置），不複製整份圖形
+ *
+ * 連續的拖曳事件會合併成一筆：命令記錄後在 seal() 之前都是「開啟」的狀態，
+ * 呼叫端可以透過 peekOpen() 取得並累加到同一筆命令
+ */
+class CommandHistory {
+    private EditCommand[] entries; // 環狀緩衝區
+    private int start = 0; // 最舊命令的位置
+    private int undoCount = 0; // 可復原的命令數
+    private int redoCount = 0; // 復原後可重做的命令數
+    private boolean open = false; // 最新的命令是否還能合併後續的變動
+
+    /**
+     * @param capacity 最多保存的命令數
+     */
+    public CommandHistory(int capacity) {
+        entries = new EditCommand[checkCapacity(capacity)];
+    }
+
+    /**
+     * 記錄已經執行的命令，並清除重做紀錄
+     * @param command 命令
+     */
+    public void record(EditCommand command) {
+        seal();
+        for (int i = 0; i < redoCount; i++) {
+            entries[slot(undoCount + i)] = null;
+        }
+        redoCount = 0;
+
+        if (undoCount == entries.length) {
+            // 緩衝區已滿，捨棄最舊的命令
+            entries[start] = null;
+            start = (start + 1) % entries.length;
+            undoCount--;
+        }
+        entries[slot(undoCount)] = command;
+        undoCount++;
+        open = true;
+    }
+
+    /**
+     * 取得仍可合併的最新命令
+     * @return 最新命令，已封閉時回傳 null
+     */
+    public EditCommand peekOpen() {
+        return open && undoCount > 0 ? entries[slot(undoCount - 1)] : null;
+    }
+
+    /**
+     * 封閉最新的命令，之後的變動會成為新的一筆
+     * 沒有實際效果的命令（例如來回拖曳回到原位）會被丟棄
+     */
+    public void seal() {
+        if (open && undoCount > 0 && entries[slot(undoCount - 1)].isNoOp()) {
+            entries[slot(undoCount - 1)] = null;
+            undoCount--;
+        }
+        open = false;
+    }
+
+    /**
+     * 復原最新的命令
+     * @return 是否有命令被復原
+     */
+    public boolean undo(CanvasPanel canvas) {
+        seal();
+        if (undoCount == 0) {
+            return false;
+        }
+        undoCount--;
+        redoCount++;
+        entries[slot(undoCount)].undo(canvas);
+        return true;
+    }
+
+    /**
+     * 重做最近一次復原的命令
+     * @return 是否有命令被重做
+     */
+    public boolean redo(CanvasPanel canvas) {
+        seal();
+        if (redoCount == 0) {
+            return false;
+        }
+        entries[slot(undoCount)].redo(canvas);
+        undoCount++;
+        redoCount--;
+        return true;
+    }
+
+    public boolean canUndo() {
+        return undoCount > 0;
+    }
+
+    public boolean canRedo() {
+        return redoCount > 0;
+    }
+
+    /**
+     * 清除所有紀錄
+     */
+    public void clear() {
+        entries = new EditCommand[entries.length];
+        start = 0;
+        undoCount = 0;
+        redoCount = 0;
+        open = false;
+    }
+
+    /**
+     * 調整容量，保留最新的命令
+     * @param capacity 新的容量
+     */
+    public void setCapacity(int capacity) {
+        checkCapacity(capacity);
+        seal();
+        int total = undoCount + redoCount;
+        int dropped = Math.max(0, total - capacity);
+        // 優先捨棄最舊的可復原命令，容量小於重做紀錄時才捨棄重做紀錄
+        int droppedUndo = Math.min(dropped, undoCount);
+        int keptRedo = Math.min(redoCount, capacity - (undoCount - droppedUndo));
+
+        EditCommand[] resized = new EditCommand[capacity];
+        int count = 0;
+        for (int i = droppedUndo; i < undoCount + keptRedo; i++) {
+            resized[count++] = entries[slot(i)];
+        }
+        entries = resized;
+        start = 0;
+        undoCount -= droppedUndo;
+        redoCount = keptRedo;
+    }
+
+    private int slot(int offset) {
+        return (start + offset) % entries.length;
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("復原紀錄的容量必須大於 0：" + capacity);
+        }
+        return capacity;
+    }
+}
+
+/**
+ * 可復原的編輯命令 interface
+ * 命令在記錄前已經執行過，undo / redo 只負責反向與重新套用變動
+ */
+interface EditCommand {
+    void undo(CanvasPanel canvas);
+
+    void redo(CanvasPanel canvas);
+
+    /**
+     * 命令是否沒有實際效果
+     */
+    default boolean isNoOp() {
+        return false;
+    }
+}
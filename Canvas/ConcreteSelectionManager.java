@@ -47,6 +47,7 @@ class ConcreteShapeManager implements CanvasPanel.ShapeManager {
     @Override
     public void ungroupShape(CompositeShape group, List<BaseShape> allShapes, List<BaseShape> selectedShapes) {
         allShapes.remove(group);
+        group.releaseMembers(false);
 
         List<BaseShape> childShapes = group.getShapes();
         for (BaseShape shape : childShapes) {
@@ -60,21 +61,16 @@ class ConcreteShapeManager implements CanvasPanel.ShapeManager {
 
     /**
      * 深度解除群組
-     * 遞迴地將所有巢狀群組展開為個別形狀
+     * 將所有巢狀群組展開為個別形狀，直接使用群組快取的葉節點列表
      */
     public void deepUngroupShape(CompositeShape group, List<BaseShape> allShapes, List<BaseShape> selectedShapes) {
         allShapes.remove(group);
+        group.releaseMembers(true);
 
-        List<BaseShape> childShapes = group.getShapes();
-        for (BaseShape shape : childShapes) {
-            if (shape instanceof CompositeShape compositeShape) {
-                // 遞迴展開子群組
-                deepUngroupShape(compositeShape, allShapes, selectedShapes);
-            } else {
-                allShapes.add(shape);
-                shape.setSelected(true);
-                selectedShapes.add(shape);
-            }
+        for (BaseShape shape : group.getLeafShapes()) {
+            allShapes.add(shape);
+            shape.setSelected(true);
+            selectedShapes.add(shape);
         }
 
         selectedShapes.remove(group);
@@ -0,0 +1,46 @@
+package Canvas;
+import java.awt.*;
+import Shapes.*;
+
+/**
+ * 髒區域追蹤器
+ * 累積一次滑鼠操作前後受影響的繪製範圍，讓畫布只重繪變動的部分
+ */
+class DirtyRegion {
+    private Rectangle region; // 目前累積的區域，null 表示沒有變動
+
+    /**
+     * 加入一塊需要重繪的區域
+     * @param area 區域
+     */
+    public void add(Rectangle area) {
+        if (area == null) {
+            return;
+        }
+        if (region == null) {
+            region = new Rectangle(area);
+        } else {
+            region.add(area);
+        }
+    }
+
+    /**
+     * 加入形狀目前的繪製範圍
+     * @param shape 形狀
+     */
+    public void add(BaseShape shape) {
+        if (shape != null) {
+            add(shape.getPaintBounds());
+        }
+    }
+
+    /**
+     * 取出累積的區域並重設
+     * @return 累積的區域，沒有變動時回傳 null
+     */
+    public Rectangle take() {
+        Rectangle result = region;
+        region = null;
+        return result;
+    }
+}
@@ -0,0 +1,441 @@
+package Canvas;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import Shapes.*;
+
+/**
+ * 移動命令
+ * 只記錄被移動的形狀與累計的位移量，拖曳期間的每個事件都累加到同一筆命令
+ */
+class MoveCommand implements EditCommand {
+    private final BaseShape[] shapes;
+    private int deltaX;
+    private int deltaY;
+
+    public MoveCommand(BaseShape[] shapes, int deltaX, int deltaY) {
+        this.shapes = shapes;
+        this.deltaX = deltaX;
+        this.deltaY = deltaY;
+    }
+
+    /**
+     * 累加同一批形狀的後續位移
+     */
+    public void add(int dx, int dy) {
+        deltaX += dx;
+        deltaY += dy;
+    }
+
+    /**
+     * 是否為同一批形狀（依序比對參考）
+     */
+    public boolean movesSame(List<BaseShape> selection) {
+        if (selection.size() != shapes.length) {
+            return false;
+        }
+        for (int i = 0; i < shapes.length; i++) {
+            if (selection.get(i) != shapes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void undo(CanvasPanel canvas) {
+        canvas.moveShapes(shapes, -deltaX, -deltaY);
+    }
+
+    @Override
+    public void redo(CanvasPanel canvas) {
+        canvas.moveShapes(shapes, deltaX, deltaY);
+    }
+
+    @Override
+    public boolean isNoOp() {
+        return deltaX == 0 && deltaY == 0;
+    }
+}
+
+/**
+ * 新增形狀命令
+ * 新增的形狀（或連結）位於列表最上層
+ */
+class AddCommand implements EditCommand {
+    private final BaseShape shape;
+
+    public AddCommand(BaseShape shape) {
+        this.shape = shape;
+    }
+
+    @Override
+    public void undo(CanvasPanel canvas) {
+        List<BaseShape> shapes = canvas.getShapes();
+        int last = shapes.size() - 1;
+        if (last >= 0 && shapes.get(last) == shape) {
+            shapes.remove(last);
+        } else {
+            EditCommands.removeAll(shapes, new BaseShape[] {shape});
+        }
+        if (shape instanceof Link link) {
+            link.detach();
+        }
+        canvas.getJournal().removed(List.of(shape), true);
+        canvas.shapesChanged();
+    }
+
+    @Override
+    public void redo(CanvasPanel canvas) {
+        if (shape instanceof Link link) {
+            link.reattach();
+        }
+        canvas.getShapes().add(shape);
+        canvas.getJournal().inserted(List.of(shape), new int[] {canvas.getShapes().size() - 1}, true);
+        canvas.shapesChanged();
+    }
+}
+
+/**
+ * 群組命令
+ * 記錄群組成員原本在列表中的位置與前一個形狀，群組本身加在最上層
+ */
+class GroupCommand implements EditCommand {
+    private final CompositeShape group;
+    private final BaseShape[] members; // 依列表順序排列
+    private final int[] positions; // 成員原本的位置（遞增），錨點不在列表中時才使用
+    private final BaseShape[] anchors; // 成員原本前一個非成員的形狀
+
+    /**
+     * 在成員從列表移除後、群組加入前建立
+     */
+    public GroupCommand(CompositeShape group, BaseShape[] members, int[] positions, List<BaseShape> remaining) {
+        this.group = group;
+        this.members = members;
+        this.positions = positions;
+        this.anchors = EditCommands.anchorsOf(remaining, positions);
+    }
+
+    /**
+     * 命令參考的形狀，延遲載入時需固定
+     */
+    public List<BaseShape> referencedShapes() {
+        return EditCommands.referenced(members, anchors);
+    }
+
+    @Override
+    public void undo(CanvasPanel canvas) {
+        List<BaseShape> shapes = canvas.getShapes();
+        EditCommands.removeAll(shapes, new BaseShape[] {group});
+        group.releaseMembers(false);
+        int[] inserted = EditCommands.insertAll(shapes, members, anchors, positions);
+        canvas.getJournal().removed(List.of(group), false);
+        canvas.getJournal().inserted(Arrays.asList(members), inserted, false);
+        canvas.shapesChanged();
+    }
+
+    @Override
+    public void redo(CanvasPanel canvas) {
+        List<BaseShape> shapes = canvas.getShapes();
+        EditCommands.removeAll(shapes, members);
+        group.restoreMembers();
+        shapes.add(group);
+        canvas.getJournal().removed(Arrays.asList(members), false);
+        canvas.getJournal().inserted(List.of(group), new int[] {shapes.size() - 1}, false);
+        canvas.shapesChanged();
+    }
+}
+
+/**
+ * 解除群組命令
+ * 群組物件本身保留原本的成員，復原時放回原本前一個形狀之後
+ */
+class UngroupCommand implements EditCommand {
+    private final CompositeShape group;
+    private final int position; // 群組原本的位置，錨點不在列表中時才使用
+    private final BaseShape anchor; // 群組原本前一個形狀，沒有時為 null
+    private final BaseShape[] children; // 解除後加在最上層的形狀
+    private final boolean deep; // 是否為深度解除群組
+
+    /**
+     * 在群組從列表移除、子形狀加在最上層之後建立
+     */
+    public UngroupCommand(CompositeShape group, int position, BaseShape[] children, boolean deep,
+                          List<BaseShape> remaining) {
+        this.group = group;
+        this.position = position;
+        this.anchor = EditCommands.anchorsOf(remaining, new int[] {position})[0];
+        this.children = children;
+        this.deep = deep;
+    }
+
+    /**
+     * 命令參考的形狀，延遲載入時需固定
+     */
+    public List<BaseShape> referencedShapes() {
+        return EditCommands.referenced(new BaseShape[] {group}, new BaseShape[] {anchor});
+    }
+
+    @Override
+    public void undo(CanvasPanel canvas) {
+        List<BaseShape> shapes = canvas.getShapes();
+        EditCommands.removeAll(shapes, children);
+        group.restoreMembers();
+        int[] inserted = EditCommands.insertAll(shapes, new BaseShape[] {group},
+                new BaseShape[] {anchor}, new int[] {position});
+        canvas.getJournal().removed(Arrays.asList(children), false);
+        canvas.getJournal().inserted(List.of(group), inserted, false);
+        canvas.shapesChanged();
+    }
+
+    @Override
+    public void redo(CanvasPanel canvas) {
+        List<BaseShape> shapes = canvas.getShapes();
+        EditCommands.removeAll(shapes, new BaseShape[] {group});
+        group.releaseMembers(deep);
+        Collections.addAll(shapes, children);
+        canvas.getJournal().removed(List.of(group), false);
+        canvas.getJournal().inserted(Arrays.asList(children),
+                EditCommands.appendedPositions(shapes.size(), children.length), false);
+        canvas.shapesChanged();
+    }
+}
+
+/**
+ * 刪除命令
+ * 記錄被移除的頂層形狀、原本的位置與前一個形狀，以及被拆離的連結
+ */
+class DeleteCommand implements EditCommand {
+    private final BaseShape[] topLevel; // 依列表順序排列
+    private final int[] positions; // 原本的位置（遞增），錨點不在列表中時才使用
+    private final BaseShape[] anchors; // 原本前一個未被刪除的形狀
+    private final Link[] detachedLinks;
+
+    /**
+     * 在形狀從列表移除後建立
+     */
+    public DeleteCommand(BaseShape[] topLevel, int[] positions, Link[] detachedLinks, List<BaseShape> remaining) {
+        this.topLevel = topLevel;
+        this.positions = positions;
+        this.anchors = EditCommands.anchorsOf(remaining, positions);
+        this.detachedLinks = detachedLinks;
+    }
+
+    /**
+     * 命令參考的形狀，延遲載入時需固定
+     */
+    public List<BaseShape> referencedShapes() {
+        return EditCommands.referenced(topLevel, anchors);
+    }
+
+    @Override
+    public void undo(CanvasPanel canvas) {
+        for (Link link : detachedLinks) {
+            link.reattach();
+        }
+        int[] inserted = EditCommands.insertAll(canvas.getShapes(), topLevel, anchors, positions);
+        canvas.getJournal().inserted(Arrays.asList(topLevel), inserted, true);
+        canvas.shapesChanged();
+    }
+
+    @Override
+    public void redo(CanvasPanel canvas) {
+        EditCommands.removeAll(canvas.getShapes(), topLevel);
+        for (Link link : detachedLinks) {
+            link.detach();
+        }
+        canvas.getJournal().removed(Arrays.asList(topLevel), true);
+        canvas.shapesChanged();
+    }
+
+    @Override
+    public boolean isNoOp() {
+        return topLevel.length == 0;
+    }
+}
+
+/**
+ * 標籤命令
+ * 記錄名稱與標籤樣式修改前後的值
+ */
+class LabelCommand implements EditCommand {
+    private final BasicShape shape;
+    private final String name, labelShape, newName, newLabelShape;
+    private final Color labelColor, newLabelColor;
+    private final int fontSize, newFontSize;
+
+    /**
+     * 在修改前建立，記錄原本的值
+     */
+    public LabelCommand(BasicShape shape) {
+        this.shape = shape;
+        this.name = shape.getName();
+        this.labelShape = shape.getLabelShape();
+        this.labelColor = shape.getLabelColor();
+        this.fontSize = shape.getFontSize();
+        this.newName = null;
+        this.newLabelShape = null;
+        this.newLabelColor = null;
+        this.newFontSize = 0;
+    }
+
+    private LabelCommand(LabelCommand before) {
+        this.shape = before.shape;
+        this.name = before.name;
+        this.labelShape = before.labelShape;
+        this.labelColor = before.labelColor;
+        this.fontSize = before.fontSize;
+        this.newName = shape.getName();
+        this.newLabelShape = shape.getLabelShape();
+        this.newLabelColor = shape.getLabelColor();
+        this.newFontSize = shape.getFontSize();
+    }
+
+    /**
+     * 修改完成後呼叫，記錄修改後的值
+     */
+    public LabelCommand completed() {
+        return new LabelCommand(this);
+    }
+
+    @Override
+    public void undo(CanvasPanel canvas) {
+        apply(name, labelShape, labelColor, fontSize);
+        canvas.getJournal().labelChanged(shape);
+        canvas.shapeChanged(shape);
+    }
+
+    @Override
+    public void redo(CanvasPanel canvas) {
+        apply(newName, newLabelShape, newLabelColor, newFontSize);
+        canvas.getJournal().labelChanged(shape);
+        canvas.shapeChanged(shape);
+    }
+
+    private void apply(String name, String labelShape, Color labelColor, int fontSize) {
+        shape.setName(name);
+        shape.setLabelShape(labelShape);
+        shape.setLabelColor(labelColor);
+        shape.setFontSize(fontSize);
+    }
+
+    @Override
+    public boolean isNoOp() {
+        return Objects.equals(name, newName) && Objects.equals(labelShape, newLabelShape)
+                && Objects.equals(labelColor, newLabelColor) && fontSize == newFontSize;
+    }
+}
+
+/**
+ * 命令共用的列表操作
+ * 插入與移除都只走訪列表一次，不因形狀數量變成平方時間；
+ * 形狀一律以參考比對，插入位置在重播時依錨點重新計算，
+ * 延遲載入在命令之間增減形狀也不會使記錄的索引失效
+ */
+class EditCommands {
+    private EditCommands() {
+    }
+
+    /**
+     * 記錄每個被移除的形狀原本前一個留在列表中的形狀，作為插回時的錨點
+     * @param remaining 形狀移除後的列表，之後加在最上層的形狀不影響結果
+     * @param positions 形狀移除前的位置（遞增）
+     * @return 各形狀的錨點，前面沒有其他形狀時為 null
+     */
+    static BaseShape[] anchorsOf(List<BaseShape> remaining, int[] positions) {
+        BaseShape[] anchors = new BaseShape[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            int before = positions[i] - i - 1; // 前面已移除 i 個形狀
+            anchors[i] = before >= 0 ? remaining.get(before) : null;
+        }
+        return anchors;
+    }
+
+    /**
+     * 將形狀插回各自錨點之後
+     * 錨點已不在列表中時退回原本的位置；插入後仍保持 items 的相對順序
+     * @param items 依原本位置排序的形狀
+     * @param anchors 各形狀的錨點，null 表示列表最前面
+     * @param positions 形狀原本的位置（遞增）
+     * @return 插入後各形狀所在的位置（遞增）
+     */
+    static int[] insertAll(List<BaseShape> list, BaseShape[] items, BaseShape[] anchors, int[] positions) {
+        Map<BaseShape, Integer> indexOf = new IdentityHashMap<>();
+        for (BaseShape anchor : anchors) {
+            if (anchor != null) {
+                indexOf.put(anchor, -1);
+            }
+        }
+        for (int i = 0; i < list.size(); i++) {
+            indexOf.replace(list.get(i), i);
+        }
+
+        // 每個形狀插在列表原本第 slots[i] 個形狀之前
+        int[] slots = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            int anchor = anchors[i] == null ? -1 : indexOf.get(anchors[i]);
+            int slot = anchors[i] == null ? 0 : anchor >= 0 ? anchor + 1 : Math.min(positions[i] - i, list.size());
+            slots[i] = i > 0 ? Math.max(slot, slots[i - 1]) : slot;
+        }
+
+        List<BaseShape> merged = new ArrayList<>(list.size() + items.length);
+        int[] inserted = new int[items.length];
+        int next = 0;
+        for (int i = 0; i < list.size(); i++) {
+            while (next < items.length && slots[next] == i) {
+                inserted[next] = merged.size();
+                merged.add(items[next++]);
+            }
+            merged.add(list.get(i));
+        }
+        while (next < items.length) {
+            inserted[next] = merged.size();
+            merged.add(items[next++]);
+        }
+        list.clear();
+        list.addAll(merged);
+        return inserted;
+    }
+
+    /**
+     * 合併命令參考的形狀，略過 null 的錨點
+     */
+    static List<BaseShape> referenced(BaseShape[] shapes, BaseShape[] anchors) {
+        List<BaseShape> result = new ArrayList<>(shapes.length + anchors.length);
+        Collections.addAll(result, shapes);
+        for (BaseShape anchor : anchors) {
+            if (anchor != null) {
+                result.add(anchor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 取得加在列表最後的形狀的位置
+     * @param size 加入後的列表大小
+     * @param count 加入的形狀數
+     */
+    static int[] appendedPositions(int size, int count) {
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = size - count + i;
+        }
+        return positions;
+    }
+
+    /**
+     * 以參考比對移除列表中的形狀
+     */
+    static void removeAll(List<BaseShape> list, BaseShape[] items) {
+        Set<BaseShape> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(targets, items);
+        list.removeIf(targets::contains);
+    }
+}
@@ -0,0 +1,174 @@
+package Canvas;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import Export.DiagramRenderer;
+import Export.TiledRenderer;
+import Shapes.*;
+
+/**
+ * 分層繪製器
+ * 拖曳選取物件時，將不會移動的形狀預先繪製到保留的背景影像中
+ * 之後每一幀只需貼上背景影像，再繪製移動中的形狀
+ */
+class LayeredRenderer {
+    // 可視的靜態形狀達到此數量時（通常是縮小檢視）改以分塊平行繪製背景影像；只有一個處理器時分塊只會增加成本
+    private static final int PARALLEL_THRESHOLD = 2000;
+
+    private List<BaseShape> staticShapes; // 繪製到背景影像的形狀
+    private List<BaseShape> movingShapes; // 每一幀都要重新繪製的形狀
+    private BufferedImage staticLayer; // 保留的背景影像
+    private boolean active = false;
+
+    /**
+     * 開始一次拖曳，將形狀分為靜態層與移動層
+     * 移動層包含選取的形狀、與其相連的連結，以及包含這些連結的群組
+     * @param shapes 畫布上的頂層形狀（依繪製順序）
+     * @param selectedShapes 選取的形狀
+     */
+    public void begin(List<BaseShape> shapes, List<BaseShape> selectedShapes) {
+        Set<BaseShape> selected = identitySet();
+        selected.addAll(selectedShapes);
+
+        Set<BaseShape> affectedLinks = identitySet();
+        for (BaseShape shape : selectedShapes) {
+            collectConnectedLinks(shape, affectedLinks);
+        }
+
+        staticShapes = new ArrayList<>();
+        movingShapes = new ArrayList<>();
+        for (BaseShape shape : shapes) {
+            if (selected.contains(shape) || affectedLinks.contains(shape) || containsAny(shape, affectedLinks)) {
+                movingShapes.add(shape);
+            } else {
+                staticShapes.add(shape);
+            }
+        }
+
+        staticLayer = null;
+        active = true;
+    }
+
+    /**
+     * 使背景影像失效
+     * 形狀列表、選取狀態或繪製順序改變時呼叫
+     */
+    public void invalidate() {
+        active = false;
+        staticShapes = null;
+        movingShapes = null;
+        staticLayer = null;
+    }
+
+    /**
+     * 是否正在使用背景影像繪製
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * 繪製背景影像與移動中的形狀
+     * 背景影像以螢幕座標貼上，之後 g2d 會轉換到模型座標
+     * @param g2d 螢幕座標的圖形
+     * @param component 畫布元件，用於決定影像大小與背景色
+     * @param transform 模型座標到螢幕座標的轉換
+     */
+    public void paint(Graphics2D g2d, Component component, AffineTransform transform) {
+        int width = Math.max(1, component.getWidth());
+        int height = Math.max(1, component.getHeight());
+        if (staticLayer == null || staticLayer.getWidth() != width || staticLayer.getHeight() != height) {
+            staticLayer = renderStaticLayer(width, height, component.getBackground(), transform);
+        }
+
+        g2d.drawImage(staticLayer, 0, 0, null);
+        g2d.transform(transform);
+
+        Rectangle clip = g2d.getClipBounds();
+        for (BaseShape shape : movingShapes) {
+            if (clip == null || shape.getPaintBounds().intersects(clip)) {
+                shape.draw(g2d);
+            }
+        }
+    }
+
+    /**
+     * 將靜態形狀繪製到新的背景影像
+     * 可視的靜態形狀很多時交給 TiledRenderer 在多個執行緒上分塊繪製；
+     * 繪製期間事件執行緒等待完成，形狀不會被修改
+     */
+    private BufferedImage renderStaticLayer(int width, int height, Color background, AffineTransform transform) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(background);
+        g2d.fillRect(0, 0, width, height);
+        g2d.setClip(0, 0, width, height);
+        g2d.transform(transform);
+
+        // 只繪製可視範圍內的靜態形狀
+        Rectangle visible = g2d.getClipBounds();
+        List<BaseShape> visibleShapes = new ArrayList<>();
+        for (BaseShape shape : staticShapes) {
+            if (shape.getPaintBounds().intersects(visible)) {
+                visibleShapes.add(shape);
+            }
+        }
+        if (visibleShapes.size() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1
+                && isScaleAndTranslate(transform)) {
+            g2d.dispose();
+            new TiledRenderer(new DiagramRenderer(visibleShapes), background).render(image, transform);
+            return image;
+        }
+        for (BaseShape shape : visibleShapes) {
+            shape.draw(g2d);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * 分塊繪製只支援等比例縮放加平移，與畫布檢視的轉換相同
+     */
+    private static boolean isScaleAndTranslate(AffineTransform transform) {
+        int allowed = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE;
+        return (transform.getType() & ~allowed) == 0 && transform.getScaleX() > 0;
+    }
+
+    /**
+     * 收集連接到形狀（或群組內形狀）的連結
+     */
+    private void collectConnectedLinks(BaseShape shape, Set<BaseShape> collector) {
+        if (shape instanceof BasicShape basicShape) {
+            collector.addAll(basicShape.getConnectedLinks());
+        } else if (shape instanceof CompositeShape group) {
+            for (BaseShape child : group.getShapes()) {
+                collectConnectedLinks(child, collector);
+            }
+        }
+    }
+
+    /**
+     * 檢查群組內是否包含任一指定的形狀
+     */
+    private boolean containsAny(BaseShape shape, Set<BaseShape> targets) {
+        if (targets.isEmpty() || !(shape instanceof CompositeShape group)) {
+            return false;
+        }
+        for (BaseShape child : group.getShapes()) {
+            if (targets.contains(child) || containsAny(child, targets)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<BaseShape> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+}
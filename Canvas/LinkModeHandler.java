@@ -1,6 +1,5 @@
 package Canvas;
 import java.awt.*;
-import java.util.List;
 import Shapes.*;
 
 /**
@@ -14,22 +13,20 @@ class LinkModeHandler {
      * 在基本形狀上開始創建連結
      */
     public void handlePress(CanvasPanel.Mode mode, Point point, CanvasPanel canvas) {
-        List<BaseShape> shapes = canvas.getShapes();
+        BasicShape basicShape = canvas.findBasicShapeAt(point);
+        if (basicShape == null) {
+            return;
+        }
 
-        for (BaseShape shape : shapes) {
-            if (shape instanceof BasicShape basicShape && shape.contains(point)) {
-                Point port = basicShape.getNearestPort(point);
-                if (port != null) {
-                    BaseShape newLink = canvas.getShapeFactory().createLink(mode, port);
-                    if (newLink instanceof Link link) {
-                        link.setStartShape(basicShape);
-                        newLink.setDepth(canvas.getNextDepth());
-                        canvas.incrementNextDepth();
-                        shapes.add(newLink);
-                        canvas.setCurrentShape(newLink);
-                        break;
-                    }
-                }
+        Point port = basicShape.getNearestPort(point);
+        if (port != null) {
+            BaseShape newLink = canvas.getShapeFactory().createLink(mode, port);
+            if (newLink instanceof Link link) {
+                link.setStartShape(basicShape);
+                newLink.setDepth(canvas.getNextDepth());
+                canvas.incrementNextDepth();
+                canvas.addShape(newLink);
+                canvas.setCurrentShape(newLink);
             }
         }
     }
@@ -41,6 +38,7 @@ class LinkModeHandler {
     public void handleDrag(Point point, CanvasPanel canvas) {
         if (canvas.getCurrentShape() instanceof Link link) {
             link.setEndPoint(point);
+            canvas.updateShapeIndex(link);
         }
     }
 
@@ -51,24 +49,26 @@ class LinkModeHandler {
     public void handleRelease(CanvasPanel.Mode mode, Point point, CanvasPanel canvas) {
         if (canvas.getCurrentShape() instanceof Link link) {
             boolean validEnd = false;
-            List<BaseShape> shapes = canvas.getShapes();
+            BasicShape basicShape = canvas.findBasicShapeAt(point);
 
-            for (BaseShape shape : shapes) {
-                if (shape instanceof BasicShape basicShape && shape.contains(point)) {
-                    Point port = basicShape.getNearestPort(point);
+            // 連回起點形狀等無效的終點視同沒有終點，走下面移除連結的流程
+            if (basicShape != null && link.canEndAt(basicShape)) {
+                Point port = basicShape.getNearestPort(point);
 
-                    if (port != null) {
-                        link.setEndPoint(port);
-                        link.setEndShape(basicShape);
-                        validEnd = true;
-                        break;
-                    }
+                if (port != null) {
+                    link.setEndPoint(port);
+                    link.setEndShape(basicShape);
+                    validEnd = true;
                 }
             }
 
             // 如果沒有找到有效的終點，則移除這個連結
-            if (!validEnd) {
-                shapes.remove(canvas.getCurrentShape());
+            if (validEnd) {
+                canvas.updateShapeIndex(link);
+                canvas.recordAdd(link);
+            } else {
+                link.detach();
+                canvas.removeShape(link);
             }
         }
     }
@@ -1,65 +1,36 @@
 package Canvas;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import Shapes.*;
 
 /**
  * 連結更新器
- * 負責更新形狀移動時相關連結的位置
+ * 找出形狀移動時受影響的連結；連結端點由 (形狀, 連接埠索引) 自行推得，不需要逐一更新座標
  */
 class LinkUpdater {
 
     /**
-     * 更新與指定形狀相關的所有連結位置
+     * 收集與指定形狀（或群組內形狀）相關的所有連結
+     * 透過形狀上記錄的連結集合找出相關連結，不需掃描整個畫布
+     * 同一批形狀共用一個集合，兩端都在這批形狀內的連結只會出現一次
+     * @param shape 移動的形狀
+     * @param relatedLinks 收集結果，呼叫端只需更新它們在空間索引中的位置
      */
-    public void updateLinksForShape(BaseShape shape, List<BaseShape> allShapes, int deltaX, int deltaY) {
-        // 收集所有關聯到此形狀的連結
-        List<Link> relatedLinks = new ArrayList<>();
-
-        for (BaseShape s : allShapes) {
-            if (s instanceof Link link) {
-                // 檢查此連結是否關聯到此形狀或其子形狀
-                boolean isRelated = false;
-
-                if (shape instanceof BasicShape) {
-                    if (link.isRelatedTo(shape)) {
-                        isRelated = true;
-                    }
-                } else if (shape instanceof CompositeShape composite) {
-                    if (composite.isRelatedToLink(link)) {
-                        isRelated = true;
-                    }
-                }
-
-                if (isRelated) {
-                    relatedLinks.add(link);
-                }
-            }
-        }
-
-        // 更新所有相關連結的位置
-        for (Link link : relatedLinks) {
-            if (shape instanceof BasicShape) {
-                // 使用修正後的方法更新連接點
-                link.updateEndpointForShape(shape, deltaX, deltaY);
-            } else {
-                // 如果是群組形狀，檢查每個子形狀
-                CompositeShape composite = (CompositeShape) shape;
-                List<BaseShape> childShapes = composite.getShapes();
-
-                for (BaseShape childShape : childShapes) {
-                    if (childShape instanceof BasicShape) {
-                        // 對群組中的每個基本形狀，使用修正後的方法更新連接點
-                        link.updateEndpointForShape(childShape, deltaX, deltaY);
-                    }
+    public void collectLinks(BaseShape shape, Set<Link> relatedLinks) {
+        if (shape instanceof BasicShape basicShape) {
+            relatedLinks.addAll(basicShape.getConnectedLinks());
+        } else if (shape instanceof CompositeShape composite) {
+            // 巢狀群組已展開並快取，不需逐層遞迴
+            for (BaseShape leaf : composite.getLeafShapes()) {
+                if (leaf instanceof BasicShape basicShape) {
+                    relatedLinks.addAll(basicShape.getConnectedLinks());
                 }
             }
         }
-
-        // 移動完成後，確保所有連接點都是最新的
-        for (Link link : relatedLinks) {
-            link.updatePosition();
-        }
     }
 }
 
@@ -71,56 +42,84 @@ class ShapeDeleter {
 
     /**
      * 刪除指定的形狀列表及其相關連結
+     * 透過形狀的連結集合找出相關連結，並以一次走訪壓縮形狀列表
+     * @return 被刪除的形狀與連結
      */
-    public void deleteShapes(List<BaseShape> shapesToDelete, List<BaseShape> allShapes) {
-        // 創建一個臨時列表，避免並發修改異常
-        List<BaseShape> shapesToRemove = new ArrayList<>(shapesToDelete);
-        List<BaseShape> allToRemove = new ArrayList<>();
+    public List<BaseShape> deleteShapes(List<BaseShape> shapesToDelete, List<BaseShape> allShapes) {
+        return deleteShapes(shapesToDelete, allShapes, null, null);
+    }
 
-        // 對於每個要刪除的形狀
-        for (BaseShape shape : shapesToRemove) {
-            // 如果是群組，遞迴收集所有子形狀
-            if (shape instanceof CompositeShape compositeShape) {
-                collectAllShapesInGroup(compositeShape, allToRemove);
-            }
+    /**
+     * 刪除指定的形狀列表及其相關連結，並記錄從畫布列表移除的頂層形狀與原本的位置
+     * @param removedTopLevel 收集被移除的頂層形狀（依原本順序），可為 null
+     * @param removedPositions 收集頂層形狀原本在列表中的位置，可為 null
+     * @return 被刪除的形狀與連結
+     */
+    public List<BaseShape> deleteShapes(List<BaseShape> shapesToDelete, List<BaseShape> allShapes,
+                                        List<BaseShape> removedTopLevel, List<Integer> removedPositions) {
+        Set<BaseShape> removedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<BaseShape> removed = new ArrayList<>();
 
-            // 添加當前形狀到刪除列表
-            allToRemove.add(shape);
+        // 收集要刪除的形狀，群組會遞迴收集所有子形狀
+        for (BaseShape shape : shapesToDelete) {
+            collectShape(shape, removedSet, removed);
         }
 
-        // 收集所有需要刪除的連結線
-        List<BaseShape> linksToRemove = new ArrayList<>();
-        for (BaseShape s : allShapes) {
-            if (s instanceof Link link) {
-                // 檢查連結是否與任何要刪除的形狀相關
-                for (BaseShape shapeToRemove : allToRemove) {
-                    if (shapeToRemove instanceof BasicShape && link.isRelatedTo(shapeToRemove)) {
-                        linksToRemove.add(link);
-                        break;
-                    } else if (shapeToRemove instanceof CompositeShape compositeShape &&
-                            compositeShape.isRelatedToLink(link)) {
-                        linksToRemove.add(link);
-                        break;
+        // 從被刪除形狀的連結集合找出相關的連結
+        Set<BaseShape> relatedLinks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (BaseShape shape : removed) {
+            if (shape instanceof BasicShape basicShape) {
+                for (Link link : basicShape.getConnectedLinks()) {
+                    if (!removedSet.contains(link)) {
+                        relatedLinks.add(link);
                     }
                 }
             }
         }
 
-        // 從畫布上移除所有標記的形狀和連結
-        allShapes.removeAll(allToRemove);
-        allShapes.removeAll(linksToRemove);
+        // 一次走訪移除被刪除的形狀與畫布上的相關連結，保留其餘形狀的順序
+        int kept = 0;
+        for (int i = 0; i < allShapes.size(); i++) {
+            BaseShape shape = allShapes.get(i);
+            boolean related = relatedLinks.contains(shape);
+            if (!related && !removedSet.contains(shape)) {
+                allShapes.set(kept++, shape);
+                continue;
+            }
+            if (related) {
+                removed.add(shape);
+            }
+            if (removedTopLevel != null) {
+                removedTopLevel.add(shape);
+            }
+            if (removedPositions != null) {
+                removedPositions.add(i);
+            }
+        }
+        allShapes.subList(kept, allShapes.size()).clear();
+
+        // 將被刪除的連結從端點形狀的連結集合中移除
+        for (BaseShape shape : removed) {
+            if (shape instanceof Link link) {
+                link.detach();
+            }
+        }
+        return removed;
     }
 
     /**
-     * 遞迴收集群組中的所有形狀
+     * 收集要刪除的形狀，群組先收集子形狀再收集群組本身
      */
-    private void collectAllShapesInGroup(CompositeShape group, List<BaseShape> collector) {
-        for (BaseShape shape : group.getShapes()) {
-            if (shape instanceof CompositeShape compositeShape) {
-                // 遞迴處理子群組
-                collectAllShapesInGroup(compositeShape, collector);
+    private void collectShape(BaseShape shape, Set<BaseShape> removedSet, List<BaseShape> removed) {
+        if (!removedSet.add(shape)) {
+            return;
+        }
+        if (shape instanceof CompositeShape compositeShape) {
+            // 遞迴處理子群組
+            for (BaseShape child : compositeShape.getShapes()) {
+                collectShape(child, removedSet, removed);
             }
-            collector.add(shape);
         }
+        removed.add(shape);
     }
 }
\ No newline at end of file
@@ -0,0 +1,150 @@
+package Canvas;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import Shapes.*;
+
+/**
+ * 即時框選
+ * 拖曳選取框時立即標示框內的形狀；每次只檢查新舊選取框之間的差異區域，
+ * 只有這些區域內的形狀可能進出選取框，因此成本與選取框的變化量成正比，而不是與形狀總數成正比
+ */
+class MarqueeSelection {
+    private final CanvasPanel canvas;
+    private final Set<BaseShape> highlighted = Collections.newSetFromMap(new IdentityHashMap<>()); // 目前在框內的頂層形狀
+    private Rectangle previous; // 上一次的選取框，尚未更新過為 null
+
+    public MarqueeSelection(CanvasPanel canvas) {
+        this.canvas = canvas;
+    }
+
+    /**
+     * 選取框改變時更新標示
+     * 進出選取框的形狀會切換選取狀態並標記為需要重繪
+     * @param area 目前的選取框
+     */
+    public void update(Rectangle area) {
+        Set<BaseShape> examined = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Rectangle strip : changedStrips(previous, area)) {
+            for (BaseShape shape : canvas.findShapesIn(strip)) {
+                if (examined.add(shape)) {
+                    refresh(shape, area);
+                }
+            }
+        }
+        previous = new Rectangle(area);
+    }
+
+    /**
+     * 結束框選
+     * @return 框內的形狀，依繪製順序排列
+     */
+    public List<BaseShape> finish() {
+        List<BaseShape> result = new ArrayList<>(highlighted.size());
+        if (previous != null) {
+            Rectangle area = new Rectangle(previous);
+            area.grow(1, 1);
+            for (BaseShape shape : canvas.findShapesIn(area)) {
+                if (highlighted.contains(shape)) {
+                    result.add(shape);
+                }
+            }
+        }
+        if (result.size() != highlighted.size()) {
+            // 索引中找不到的形狀（理論上不會發生）改以畫布列表的順序補齊
+            result.clear();
+            for (BaseShape shape : canvas.getShapes()) {
+                if (highlighted.contains(shape)) {
+                    result.add(shape);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 重新判斷單一形狀是否在選取框內，狀態改變時切換選取並標記重繪
+     */
+    private void refresh(BaseShape shape, Rectangle area) {
+        boolean inside = isShapeInSelectionArea(shape, area);
+        if (inside ? highlighted.add(shape) : highlighted.remove(shape)) {
+            shape.setSelected(inside);
+            canvas.markDirty(shape);
+        }
+    }
+
+    /**
+     * 計算新舊選取框之間的差異區域
+     * 形狀要進出選取框，一定與新框多出來或舊框少掉的部分相交；
+     * 各區域向外多擴一個像素，涵蓋矩形邊界半開半閉造成的誤差
+     */
+    private static List<Rectangle> changedStrips(Rectangle before, Rectangle after) {
+        List<Rectangle> strips = new ArrayList<>(8);
+        if (before == null) {
+            strips.add(grown(after));
+        } else if (before.isEmpty() || after.isEmpty() || !before.intersects(after)) {
+            strips.add(grown(before));
+            strips.add(grown(after));
+        } else {
+            subtract(after, before, strips);
+            subtract(before, after, strips);
+        }
+        return strips;
+    }
+
+    /**
+     * 將 a 扣掉與 b 重疊的部分，剩下最多四塊矩形（上、下、左、右）
+     */
+    private static void subtract(Rectangle a, Rectangle b, List<Rectangle> strips) {
+        Rectangle overlap = a.intersection(b);
+        int aRight = a.x + a.width, aBottom = a.y + a.height;
+        int overlapRight = overlap.x + overlap.width, overlapBottom = overlap.y + overlap.height;
+        if (overlap.y > a.y) {
+            strips.add(grown(new Rectangle(a.x, a.y, a.width, overlap.y - a.y)));
+        }
+        if (aBottom > overlapBottom) {
+            strips.add(grown(new Rectangle(a.x, overlapBottom, a.width, aBottom - overlapBottom)));
+        }
+        if (overlap.x > a.x) {
+            strips.add(grown(new Rectangle(a.x, overlap.y, overlap.x - a.x, overlap.height)));
+        }
+        if (aRight > overlapRight) {
+            strips.add(grown(new Rectangle(overlapRight, overlap.y, aRight - overlapRight, overlap.height)));
+        }
+    }
+
+    private static Rectangle grown(Rectangle area) {
+        Rectangle result = new Rectangle(area);
+        result.grow(1, 1);
+        return result;
+    }
+
+    /**
+     * 判斷形狀是否在選取區域內
+     * 支援不同類型的形狀
+     */
+    static boolean isShapeInSelectionArea(BaseShape shape, Rectangle selectionRect) {
+        if (shape instanceof BasicShape basicShape) {
+            Rectangle shapeBounds = basicShape.getBounds();
+            // 檢查形狀的邊界是否與選取矩形相交或包含
+            return selectionRect.intersects(shapeBounds) || selectionRect.contains(shapeBounds);
+
+        } else if (shape instanceof CompositeShape compositeShape) {
+            Rectangle groupBounds = compositeShape.getBounds();
+            // 對於群組，檢查群組的邊界
+            return selectionRect.intersects(groupBounds) || selectionRect.contains(groupBounds);
+
+        } else if (shape instanceof Link link) {
+            Point startPoint = link.getStartPoint();
+            Point endPoint = link.getEndPoint();
+            // 對於連結，檢查起點和終點是否在選取區域內
+            return selectionRect.contains(startPoint) || selectionRect.contains(endPoint) ||
+                    selectionRect.intersectsLine(startPoint.x, startPoint.y, endPoint.x, endPoint.y);
+        }
+
+        return false;
+    }
+}
@@ -1,5 +1,6 @@
 package Canvas;
 import java.awt.*;
+import java.util.List;
 import Shapes.*;
 
 /**
@@ -17,7 +18,8 @@ class ShapeModeHandler {
         if (newShape != null) {
             newShape.setDepth(canvas.getNextDepth());
             canvas.incrementNextDepth();
-            canvas.getShapes().add(newShape);
+            canvas.addShape(newShape);
+            canvas.recordAdd(newShape);
             canvas.setCurrentShape(newShape);
         }
     }
@@ -30,6 +32,8 @@ class ShapeModeHandler {
         if (canvas.getCurrentShape() != null) {
             canvas.settingDeltaX_DeltaY(point);
             canvas.getCurrentShape().move(canvas.getDeltaX(), canvas.getDeltaY());
+            canvas.updateShapeIndex(canvas.getCurrentShape());
+            canvas.getJournal().moved(List.of(canvas.getCurrentShape()), canvas.getDeltaX(), canvas.getDeltaY());
             canvas.setStartPoint(point);
         }
     }
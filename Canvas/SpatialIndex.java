@@ -0,0 +1,231 @@
+package Canvas;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import Shapes.*;
+
+/**
+ * 空間索引
+ * 使用均勻網格記錄畫布上每個頂層形狀繪製範圍所覆蓋的格子
+ * 點選查詢只需檢查游標所在格子內的形狀，並依照加入順序（即繪製順序）決定上下層
+ * 繪製範圍已涵蓋連結與群組邊框的點選容差，因此可同時用於點選與裁切查詢
+ * 範圍很大的形狀（長連結、大群組）不放入格子，另外存放，每次查詢都會檢查
+ */
+class SpatialIndex {
+    private static final int CELL_SIZE = 128; // 每個格子的邊長
+    private static final int MAX_CELLS_PER_ENTRY = 64; // 超過此格子數的形狀改放在 oversize
+
+    private final Map<Long, List<Entry>> cells = new HashMap<>(); // 格子座標 -> 形狀項目
+    private final Map<BaseShape, Entry> entries = new IdentityHashMap<>(); // 形狀 -> 索引項目
+    private final Set<Entry> oversize = Collections.newSetFromMap(new IdentityHashMap<>()); // 不放入格子的項目
+    private long nextOrder = 0; // 下一個加入形狀的繪製順序
+
+    /**
+     * 索引項目
+     * 記錄形狀、繪製順序以及目前所佔的格子範圍
+     */
+    private static class Entry {
+        final BaseShape shape;
+        final long order;
+        int minCellX, minCellY, maxCellX, maxCellY;
+        boolean oversize; // 是否存放在 oversize 而非格子中
+
+        Entry(BaseShape shape, long order) {
+            this.shape = shape;
+            this.order = order;
+        }
+
+        boolean covers(int cellX, int cellY) {
+            return cellX >= minCellX && cellX <= maxCellX && cellY >= minCellY && cellY <= maxCellY;
+        }
+    }
+
+    /**
+     * 加入形狀
+     * 新加入的形狀位於最上層，與 shapes.add 的行為一致
+     * @param shape 要加入的形狀
+     */
+    public void insert(BaseShape shape) {
+        remove(shape);
+        Entry entry = new Entry(shape, nextOrder++);
+        entries.put(shape, entry);
+        place(entry);
+    }
+
+    /**
+     * 移除形狀
+     * @param shape 要移除的形狀
+     */
+    public void remove(BaseShape shape) {
+        Entry entry = entries.remove(shape);
+        if (entry != null) {
+            unplace(entry);
+        }
+    }
+
+    /**
+     * 形狀移動或改變大小後更新其所佔格子，保留原本的繪製順序
+     * @param shape 要更新的形狀
+     */
+    public void update(BaseShape shape) {
+        Entry entry = entries.get(shape);
+        if (entry != null) {
+            unplace(entry);
+            place(entry);
+        }
+    }
+
+    /**
+     * 清除所有索引
+     */
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        oversize.clear();
+        nextOrder = 0;
+    }
+
+    /**
+     * 依照形狀列表的順序重建索引
+     * @param shapes 畫布上的頂層形狀
+     */
+    public void rebuild(List<BaseShape> shapes) {
+        clear();
+        for (BaseShape shape : shapes) {
+            insert(shape);
+        }
+    }
+
+    /**
+     * 找出包含指定點的最上層形狀
+     * @param p 查詢點
+     * @param filter 額外的篩選條件
+     * @return 最上層且符合條件的形狀，找不到則回傳 null
+     */
+    public BaseShape findTopmost(Point p, Predicate<BaseShape> filter) {
+        int cellX = cellOf(p.x), cellY = cellOf(p.y);
+        Entry best = null;
+        List<Entry> cell = cells.get(key(cellX, cellY));
+        if (cell != null) {
+            for (Entry entry : cell) {
+                if ((best == null || entry.order > best.order)
+                        && filter.test(entry.shape) && entry.shape.contains(p)) {
+                    best = entry;
+                }
+            }
+        }
+        for (Entry entry : oversize) {
+            if ((best == null || entry.order > best.order) && entry.covers(cellX, cellY)
+                    && filter.test(entry.shape) && entry.shape.contains(p)) {
+                best = entry;
+            }
+        }
+        return best == null ? null : best.shape;
+    }
+
+    /**
+     * 找出繪製範圍與指定區域相交的形狀
+     * @param area 查詢區域
+     * @return 依繪製順序（由下到上）排列的形狀
+     */
+    public List<BaseShape> query(Rectangle area) {
+        Set<Entry> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        int minCellX = cellOf(area.x);
+        int minCellY = cellOf(area.y);
+        int maxCellX = cellOf(area.x + area.width);
+        int maxCellY = cellOf(area.y + area.height);
+
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cy = minCellY; cy <= maxCellY; cy++) {
+                List<Entry> cell = cells.get(key(cx, cy));
+                if (cell != null) {
+                    found.addAll(cell);
+                }
+            }
+        }
+        for (Entry entry : oversize) {
+            if (entry.minCellX <= maxCellX && entry.maxCellX >= minCellX
+                    && entry.minCellY <= maxCellY && entry.maxCellY >= minCellY) {
+                found.add(entry);
+            }
+        }
+
+        List<Entry> sorted = new ArrayList<>(found);
+        sorted.sort(Comparator.comparingLong(entry -> entry.order));
+
+        List<BaseShape> result = new ArrayList<>(sorted.size());
+        for (Entry entry : sorted) {
+            if (entry.shape.getPaintBounds().intersects(area)) {
+                result.add(entry.shape);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 將項目放入其繪製範圍所覆蓋的格子，覆蓋太多格子時改放在 oversize
+     */
+    private void place(Entry entry) {
+        Rectangle bounds = entry.shape.getPaintBounds();
+        entry.minCellX = cellOf(bounds.x);
+        entry.minCellY = cellOf(bounds.y);
+        entry.maxCellX = cellOf(bounds.x + bounds.width);
+        entry.maxCellY = cellOf(bounds.y + bounds.height);
+
+        long cellCount = ((long) entry.maxCellX - entry.minCellX + 1) * ((long) entry.maxCellY - entry.minCellY + 1);
+        entry.oversize = cellCount > MAX_CELLS_PER_ENTRY;
+        if (entry.oversize) {
+            oversize.add(entry);
+            return;
+        }
+        for (int cx = entry.minCellX; cx <= entry.maxCellX; cx++) {
+            for (int cy = entry.minCellY; cy <= entry.maxCellY; cy++) {
+                cells.computeIfAbsent(key(cx, cy), k -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    /**
+     * 將項目從原本所佔的格子中移除
+     */
+    private void unplace(Entry entry) {
+        if (entry.oversize) {
+            oversize.remove(entry);
+            return;
+        }
+        for (int cx = entry.minCellX; cx <= entry.maxCellX; cx++) {
+            for (int cy = entry.minCellY; cy <= entry.maxCellY; cy++) {
+                long key = key(cx, cy);
+                List<Entry> cell = cells.get(key);
+                if (cell == null) continue;
+
+                // 格子內順序不重要，以最後一個元素補位
+                for (int i = 0; i < cell.size(); i++) {
+                    if (cell.get(i) == entry) {
+                        cell.set(i, cell.get(cell.size() - 1));
+                        cell.remove(cell.size() - 1);
+                        break;
+                    }
+                }
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    private static int cellOf(int coordinate) {
+        return Math.floorDiv(coordinate, CELL_SIZE);
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,106 @@
+package Canvas;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * 畫布視窗
+ * 記錄縮放比例與目前可視範圍左上角的模型座標
+ * 負責螢幕座標與模型座標之間的轉換
+ */
+class Viewport {
+    private static final double MIN_SCALE = 0.02;
+    private static final double MAX_SCALE = 8.0;
+
+    private double scale = 1.0; // 縮放比例（螢幕像素 / 模型單位）
+    private double originX = 0; // 可視範圍左上角的模型 x 座標
+    private double originY = 0; // 可視範圍左上角的模型 y 座標
+
+    /**
+     * 將螢幕座標轉為模型座標
+     * @param screen 螢幕上的點
+     * @return 模型上的點
+     */
+    public Point toModel(Point screen) {
+        return new Point(
+                (int) Math.floor(screen.x / scale + originX),
+                (int) Math.floor(screen.y / scale + originY));
+    }
+
+    /**
+     * 將螢幕上的矩形轉為涵蓋它的模型矩形
+     * @param screen 螢幕矩形
+     * @return 模型矩形
+     */
+    public Rectangle toModel(Rectangle screen) {
+        int x0 = (int) Math.floor(screen.x / scale + originX);
+        int y0 = (int) Math.floor(screen.y / scale + originY);
+        int x1 = (int) Math.ceil((screen.x + screen.width) / scale + originX);
+        int y1 = (int) Math.ceil((screen.y + screen.height) / scale + originY);
+        return new Rectangle(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    /**
+     * 將模型矩形轉為涵蓋它的螢幕矩形
+     * @param model 模型矩形
+     * @return 螢幕矩形
+     */
+    public Rectangle toScreen(Rectangle model) {
+        int x0 = (int) Math.floor((model.x - originX) * scale);
+        int y0 = (int) Math.floor((model.y - originY) * scale);
+        int x1 = (int) Math.ceil((model.x + model.width - originX) * scale);
+        int y1 = (int) Math.ceil((model.y + model.height - originY) * scale);
+        return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    /**
+     * 取得模型座標到螢幕座標的轉換
+     * @return 轉換矩陣
+     */
+    public AffineTransform getTransform() {
+        AffineTransform transform = AffineTransform.getScaleInstance(scale, scale);
+        transform.translate(-originX, -originY);
+        return transform;
+    }
+
+    /**
+     * 以螢幕上的某一點為中心縮放，該點對應的模型位置保持不動
+     * @param anchor 螢幕上的縮放中心
+     * @param factor 縮放倍率
+     * @return 比例是否有改變
+     */
+    public boolean zoomAt(Point anchor, double factor) {
+        double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        if (newScale == scale) {
+            return false;
+        }
+        double modelX = anchor.x / scale + originX;
+        double modelY = anchor.y / scale + originY;
+        scale = newScale;
+        originX = modelX - anchor.x / scale;
+        originY = modelY - anchor.y / scale;
+        return true;
+    }
+
+    /**
+     * 依螢幕像素捲動可視範圍
+     * @param dx 水平捲動量
+     * @param dy 垂直捲動量
+     */
+    public void scrollBy(int dx, int dy) {
+        originX += dx / scale;
+        originY += dy / scale;
+    }
+
+    /**
+     * 回到原始比例與位置
+     */
+    public void reset() {
+        scale = 1.0;
+        originX = 0;
+        originY = 0;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+}
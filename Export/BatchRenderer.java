@@ -0,0 +1,130 @@
+package Export;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import Persistence.Diagram;
+import Persistence.DiagramFormat;
+import Persistence.DiagramReader;
+
+/**
+ * 批次渲染命令列工具
+ * 不開啟任何視窗（java.awt.headless=true），將多個圖檔平行轉成 PNG
+ * 每個圖檔由一個工作執行緒讀取，再以 DiagramImageExporter 串流寫出，記憶體用量與圖形高度無關
+ *
+ * 用法：java -cp <classes> Export.BatchRenderer [-o 輸出目錄] [-j 執行緒數] 圖檔或目錄...
+ * 目錄會展開成其中所有的 .umld 檔；未指定輸出目錄時，PNG 寫在圖檔旁邊
+ * 執行緒數預設為處理器核心數；有任何圖檔失敗時以狀態碼 1 結束
+ */
+public final class BatchRenderer {
+    static {
+        // 必須在任何 AWT 初始化之前設定，因此放在所有 AWT 型別的靜態欄位之前
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    private static final Color BACKGROUND = Color.WHITE; // 與畫布相同的背景顏色
+
+    private BatchRenderer() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Path outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o" -> outputDirectory = Paths.get(requireValue(args, ++i));
+                    case "-j" -> threads = Integer.parseInt(requireValue(args, ++i));
+                    default -> addInput(Paths.get(args[i]), inputs);
+                }
+            }
+            if (inputs.isEmpty() || threads <= 0) {
+                throw new IllegalArgumentException("沒有指定圖檔");
+            }
+            if (outputDirectory != null) {
+                Files.createDirectories(outputDirectory);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println("用法：BatchRenderer [-o 輸出目錄] [-j 執行緒數] 圖檔或目錄...");
+            System.exit(2);
+            return;
+        }
+
+        System.exit(renderAll(inputs, outputDirectory, threads) ? 0 : 1);
+    }
+
+    /**
+     * 平行渲染所有圖檔，依輸入順序回報結果
+     * @return 是否全部成功
+     */
+    static boolean renderAll(List<Path> inputs, Path outputDirectory, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, inputs.size()));
+        List<Future<Path>> results = new ArrayList<>(inputs.size());
+        for (Path input : inputs) {
+            Path output = outputPathFor(input, outputDirectory);
+            results.add(pool.submit(() -> render(input, output)));
+        }
+        pool.shutdown();
+
+        boolean allSucceeded = true;
+        for (int i = 0; i < inputs.size(); i++) {
+            try {
+                System.out.println(inputs.get(i) + " -> " + results.get(i).get());
+            } catch (ExecutionException e) {
+                allSucceeded = false;
+                System.err.println(inputs.get(i) + " 失敗: " + e.getCause());
+            }
+        }
+        return allSucceeded;
+    }
+
+    /**
+     * 讀取一個圖檔並輸出 PNG
+     * 讀取器、形狀與匯出器都只屬於這個工作，不與其他執行緒共用
+     * @return 輸出檔案
+     */
+    static Path render(Path input, Path output) throws IOException {
+        Diagram diagram = new DiagramReader().read(input);
+        new DiagramImageExporter(diagram.getShapes(), BACKGROUND).exportPng(output, null);
+        return output;
+    }
+
+    private static void addInput(Path path, List<Path> inputs) throws IOException {
+        if (!Files.isDirectory(path)) {
+            inputs.add(path);
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path, "*." + DiagramFormat.FILE_EXTENSION)) {
+            List<Path> sorted = new ArrayList<>();
+            files.forEach(sorted::add);
+            sorted.sort(null);
+            inputs.addAll(sorted);
+        }
+    }
+
+    private static Path outputPathFor(Path input, Path outputDirectory) {
+        String name = input.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String png = (dot > 0 ? name.substring(0, dot) : name) + ".png";
+        Path directory = outputDirectory != null ? outputDirectory : input.toAbsolutePath().getParent();
+        return directory.resolve(png);
+    }
+
+    private static String requireValue(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException(args[index - 1] + " 需要一個參數");
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,121 @@
+package Export;
+
+import java.awt.*;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import Shapes.*;
+
+/**
+ * 圖形影像匯出器
+ * 匯出整份圖形的範圍（不只是畫布的可視部分），每次由 TiledRenderer 平行繪製一段水平長條
+ * 每段長條繪製完成後立即寫入 PNG 編碼器，不需要建立整張影像
+ *
+ * 記憶體用量：每個工作執行緒一張圖塊影像，加上一段長條的像素（與圖形寬度成正比，與高度無關）
+ * 匯出期間形狀不可被修改，呼叫端需阻擋使用者的編輯操作
+ */
+public class DiagramImageExporter {
+    private static final int BAND_HEIGHT = TiledRenderer.TILE_HEIGHT; // 分配形狀時的列高（像素）
+    private static final int MAX_STRIP_PIXELS = 4 << 20; // 一段長條最多的像素數，限制緩衝區大小
+
+    private final DiagramRenderer renderer;
+    private final TiledRenderer tiledRenderer;
+    private final Rectangle extent; // 匯出的模型範圍
+
+    /**
+     * 進度回報 interface
+     */
+    public interface ProgressListener {
+        /**
+         * 回報匯出進度
+         * @param completedRows 已寫入的像素列數
+         * @param totalRows 總像素列數
+         * @return 是否繼續匯出，回傳 false 會取消
+         */
+        boolean progress(int completedRows, int totalRows);
+    }
+
+    /**
+     * 建立匯出器
+     * @param shapes 頂層形狀（依繪製順序），會被複製一份
+     * @param background 背景顏色
+     */
+    public DiagramImageExporter(List<BaseShape> shapes, Color background) {
+        this.renderer = new DiagramRenderer(shapes);
+        this.tiledRenderer = new TiledRenderer(renderer, background);
+        this.extent = renderer.getExtent();
+    }
+
+    /**
+     * 取得匯出影像的範圍（模型座標，一個模型單位為一個像素）
+     */
+    public Rectangle getExtent() {
+        return new Rectangle(extent);
+    }
+
+    /**
+     * 將圖形匯出為 PNG 檔案
+     * 取消時會刪除寫到一半的檔案
+     * @param path 輸出檔案
+     * @param listener 進度回報
+     * @return 是否完成，被取消時回傳 false
+     */
+    public boolean exportPng(Path path, ProgressListener listener) throws IOException {
+        int width = extent.width;
+        int height = extent.height;
+        // 每段長條包含數列圖塊，讓每個工作執行緒都有圖塊可以繪製
+        int bandsPerStrip = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(),
+                MAX_STRIP_PIXELS / (width * BAND_HEIGHT)));
+        int stripHeight = bandsPerStrip * BAND_HEIGHT;
+        int[] stripPixels = new int[width * Math.min(stripHeight, height)]; // 一段長條拼接後的像素
+        List<List<Integer>> strips = bucketByStrip(height, stripHeight);
+
+        boolean completed = false;
+        try (PngStreamWriter writer = new PngStreamWriter(
+                new BufferedOutputStream(Files.newOutputStream(path)), width, height)) {
+            for (int stripY = 0; stripY < height; stripY += stripHeight) {
+                int rows = Math.min(stripHeight, height - stripY);
+                tiledRenderer.renderInto(stripPixels, width, rows, extent.x, extent.y + stripY, 1.0,
+                        strips.get(stripY / stripHeight));
+
+                for (int row = 0; row < rows; row++) {
+                    writer.writeRow(stripPixels, row * width);
+                }
+                if (listener != null && !listener.progress(stripY + rows, height)) {
+                    return false;
+                }
+            }
+            writer.finish();
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(path);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 將形狀依垂直範圍分配到各段長條，每段內保持繪製順序
+     */
+    private List<List<Integer>> bucketByStrip(int height, int stripHeight) {
+        int stripCount = (height + stripHeight - 1) / stripHeight;
+        List<List<Integer>> strips = new ArrayList<>(stripCount);
+        for (int i = 0; i < stripCount; i++) {
+            strips.add(new ArrayList<>());
+        }
+        for (int i = 0; i < renderer.getShapeCount(); i++) {
+            Rectangle paintBounds = renderer.getPaintBounds(i);
+            int first = Math.max(0, (paintBounds.y - extent.y) / stripHeight);
+            int last = Math.min(stripCount - 1, (paintBounds.y + paintBounds.height - 1 - extent.y) / stripHeight);
+            for (int strip = first; strip <= last; strip++) {
+                strips.get(strip).add(i);
+            }
+        }
+        return strips;
+    }
+}
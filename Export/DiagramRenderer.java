@@ -0,0 +1,96 @@
+package Export;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import Shapes.*;
+
+/**
+ * 圖形渲染器
+ * 不依賴任何 Swing 元件，將頂層形狀（基本形狀、連結與群組）依繪製順序畫到任意 Graphics2D
+ * 可在 java.awt.headless=true 的環境下使用，例如命令列的批次轉檔
+ *
+ * 建立時預先計算每個形狀的繪製範圍，繪製時只畫與裁切區域相交的形狀
+ * 渲染期間形狀不可被修改；不同執行緒各自使用自己的渲染器與形狀即可平行渲染
+ */
+public class DiagramRenderer {
+    private static final int MARGIN = 10; // 圖形範圍外保留的空白
+
+    private final List<BaseShape> shapes;
+    private final Rectangle[] paintBounds; // 各形狀的繪製範圍，避免每次繪製重新計算
+    private final Rectangle extent; // 整份圖形的模型範圍（含空白）
+
+    /**
+     * 建立渲染器
+     * @param shapes 頂層形狀（依繪製順序），會被複製一份
+     */
+    public DiagramRenderer(List<BaseShape> shapes) {
+        this.shapes = new ArrayList<>(shapes);
+        this.paintBounds = new Rectangle[this.shapes.size()];
+
+        Rectangle union = null;
+        for (int i = 0; i < paintBounds.length; i++) {
+            paintBounds[i] = this.shapes.get(i).getPaintBounds();
+            if (union == null) {
+                union = new Rectangle(paintBounds[i]);
+            } else {
+                union.add(paintBounds[i]);
+            }
+        }
+        if (union == null) {
+            union = new Rectangle(0, 0, 1, 1); // 空白圖形仍有一個最小的範圍
+        }
+        union.grow(MARGIN, MARGIN);
+        this.extent = union;
+    }
+
+    /**
+     * 取得整份圖形的範圍（模型座標）
+     */
+    public Rectangle getExtent() {
+        return new Rectangle(extent);
+    }
+
+    /**
+     * 繪製整份圖形
+     * 圖形上下文應已轉換到模型座標，有裁切區域時只繪製與其相交的形狀
+     * @param g2d 圖形上下文
+     */
+    public void render(Graphics2D g2d) {
+        Rectangle clip = g2d.getClipBounds();
+        for (int i = 0; i < paintBounds.length; i++) {
+            if (clip == null || paintBounds[i].intersects(clip)) {
+                shapes.get(i).draw(g2d);
+            }
+        }
+    }
+
+    /**
+     * 只繪製指定的形狀，呼叫端已事先依範圍篩選過候選形狀
+     * @param g2d 圖形上下文
+     * @param candidates 形狀索引（遞增，即繪製順序）
+     */
+    void render(Graphics2D g2d, List<Integer> candidates) {
+        Rectangle clip = g2d.getClipBounds();
+        for (int index : candidates) {
+            if (clip == null || paintBounds[index].intersects(clip)) {
+                shapes.get(index).draw(g2d);
+            }
+        }
+    }
+
+    /**
+     * 形狀數量
+     */
+    int getShapeCount() {
+        return paintBounds.length;
+    }
+
+    /**
+     * 取得形狀的繪製範圍
+     * @param index 形狀索引
+     */
+    Rectangle getPaintBounds(int index) {
+        return paintBounds[index];
+    }
+}
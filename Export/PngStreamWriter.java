@@ -0,0 +1,140 @@
+package Export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 串流式 PNG 編碼器
+ * 影像列依序寫入，壓縮後的資料滿一個緩衝區就寫成一個 IDAT 區塊
+ * 記憶體用量與影像高度無關，不需要先建立整張影像
+ *
+ * 格式：8 位元 RGB（色彩類型 2），不交錯，每列使用 None 濾波
+ */
+class PngStreamWriter implements AutoCloseable {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int CHUNK_SIZE = 64 * 1024; // 每個 IDAT 區塊的最大資料量
+
+    private final OutputStream out;
+    private final int width;
+    private final int height;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED); // 圖形大多是單色區塊，最快的壓縮等級已足夠
+    private final byte[] chunkBuffer = new byte[CHUNK_SIZE]; // 尚未寫出的壓縮資料
+    private int chunkLength = 0;
+    private final byte[] rowBuffer; // 一列的資料：濾波類型 + RGB
+    private final CRC32 crc = new CRC32();
+    private int rowsWritten = 0;
+
+    /**
+     * 寫出檔案標頭
+     * @param out 輸出串流
+     * @param width 影像寬度（像素）
+     * @param height 影像高度（像素）
+     */
+    public PngStreamWriter(OutputStream out, int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("影像大小不正確：" + width + "x" + height);
+        }
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.rowBuffer = new byte[1 + width * 3];
+
+        out.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8; // 每個色彩通道 8 位元
+        header[9] = 2; // RGB
+        header[10] = 0; // deflate 壓縮
+        header[11] = 0; // 標準濾波
+        header[12] = 0; // 不交錯
+        writeChunk("IHDR", header, header.length);
+    }
+
+    /**
+     * 寫入一列像素
+     * @param pixels 像素陣列（0xRRGGBB）
+     * @param offset 該列第一個像素在陣列中的位置
+     */
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        if (rowsWritten == height) {
+            throw new IllegalStateException("已寫入所有影像列");
+        }
+        rowBuffer[0] = 0; // None 濾波
+        for (int x = 0, i = 1; x < width; x++) {
+            int rgb = pixels[offset + x];
+            rowBuffer[i++] = (byte) (rgb >> 16);
+            rowBuffer[i++] = (byte) (rgb >> 8);
+            rowBuffer[i++] = (byte) rgb;
+        }
+        deflater.setInput(rowBuffer);
+        while (!deflater.needsInput()) {
+            flushDeflater();
+        }
+        rowsWritten++;
+    }
+
+    /**
+     * 寫出剩餘的壓縮資料與結尾區塊
+     */
+    public void finish() throws IOException {
+        if (rowsWritten != height) {
+            throw new IllegalStateException("影像列數不足：" + rowsWritten + "/" + height);
+        }
+        deflater.finish();
+        while (!deflater.finished()) {
+            flushDeflater();
+        }
+        if (chunkLength > 0) {
+            writeChunk("IDAT", chunkBuffer, chunkLength);
+        }
+        writeChunk("IEND", new byte[0], 0);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        deflater.end();
+        out.close();
+    }
+
+    /**
+     * 取出壓縮資料，緩衝區滿時寫成一個 IDAT 區塊
+     */
+    private void flushDeflater() throws IOException {
+        chunkLength += deflater.deflate(chunkBuffer, chunkLength, CHUNK_SIZE - chunkLength);
+        if (chunkLength == CHUNK_SIZE) {
+            writeChunk("IDAT", chunkBuffer, chunkLength);
+            chunkLength = 0;
+        }
+    }
+
+    /**
+     * 寫出一個區塊：長度、類型、資料、CRC
+     */
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        byte[] lengthBytes = new byte[4];
+        putInt(lengthBytes, 0, length);
+        out.write(lengthBytes);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+
+        crc.reset();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, (int) crc.getValue());
+        out.write(crcBytes);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
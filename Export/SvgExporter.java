@@ -0,0 +1,256 @@
+package Export;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import Shapes.*;
+
+/**
+ * SVG 向量匯出器
+ * 依繪製順序逐一將形狀寫入緩衝的 Writer，不建立 DOM，輸出大小與形狀數量成正比
+ * 幾何資料直接取自形狀：邊界、標籤外框、分隔線與連結的箭頭多邊形，與畫布繪製時相同
+ *
+ * 選取狀態（連接埠、群組邊框）屬於編輯畫面，不會被匯出
+ */
+public class SvgExporter {
+    private static final int MARGIN = 10; // 圖形範圍外保留的空白
+    private static final String FILL_COLOR = "#c0c0c0"; // 形狀的填充色（Color.LIGHT_GRAY）
+    private static final int PROGRESS_INTERVAL = 1024; // 每寫出這麼多個頂層形狀回報一次進度
+
+    private final List<BaseShape> shapes;
+
+    /**
+     * 進度回報 interface
+     */
+    public interface ProgressListener {
+        /**
+         * 回報匯出進度
+         * @param completedShapes 已寫出的頂層形狀數
+         * @param totalShapes 頂層形狀總數
+         * @return 是否繼續匯出，回傳 false 會取消
+         */
+        boolean progress(int completedShapes, int totalShapes);
+    }
+
+    /**
+     * 建立匯出器
+     * @param shapes 頂層形狀（依繪製順序），會被複製一份
+     */
+    public SvgExporter(List<BaseShape> shapes) {
+        this.shapes = new ArrayList<>(shapes);
+    }
+
+    /**
+     * 將圖形匯出為 SVG 檔案
+     * @param path 輸出檔案
+     */
+    public void export(Path path) throws IOException {
+        export(path, null);
+    }
+
+    /**
+     * 將圖形匯出為 SVG 檔案
+     * 取消或失敗時會刪除寫到一半的檔案
+     * @param path 輸出檔案
+     * @param listener 進度回報，可為 null
+     * @return 是否完成，被取消時回傳 false
+     */
+    public boolean export(Path path, ProgressListener listener) throws IOException {
+        boolean completed = false;
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            completed = write(out, listener);
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(path);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 將圖形寫入 Writer
+     * @param out 輸出目標，呼叫端負責關閉
+     */
+    public void write(Writer out) throws IOException {
+        write(out, null);
+    }
+
+    /**
+     * 將圖形寫入 Writer，每寫出一批頂層形狀回報一次進度
+     * @return 是否完成，被取消時回傳 false（輸出只寫了一部分）
+     */
+    private boolean write(Writer out, ProgressListener listener) throws IOException {
+        Rectangle extent = computeExtent();
+        StringBuilder buffer = new StringBuilder(256); // 重複使用於每個元素
+
+        buffer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(extent.width)
+                .append("\" height=\"").append(extent.height)
+                .append("\" viewBox=\"").append(extent.x).append(' ').append(extent.y).append(' ')
+                .append(extent.width).append(' ').append(extent.height).append("\">\n")
+                .append("<style>")
+                .append(".s{fill:").append(FILL_COLOR).append(";stroke:#000}")
+                .append(".k{stroke:#000}")
+                .append(".a{fill:#000;stroke:#000}")
+                .append(".h{fill:#fff;stroke:#000}")
+                .append("text{font-family:Arial;text-anchor:middle;dominant-baseline:central}")
+                .append("</style>\n")
+                .append("<rect x=\"").append(extent.x).append("\" y=\"").append(extent.y)
+                .append("\" width=\"").append(extent.width).append("\" height=\"").append(extent.height)
+                .append("\" fill=\"#fff\"/>\n");
+        out.append(buffer);
+
+        for (int i = 0; i < shapes.size(); i++) {
+            writeShape(shapes.get(i), out, buffer);
+            int completed = i + 1;
+            if (listener != null && (completed % PROGRESS_INTERVAL == 0 || completed == shapes.size())
+                    && !listener.progress(completed, shapes.size())) {
+                return false;
+            }
+        }
+        out.write("</svg>\n");
+        return true;
+    }
+
+    /**
+     * 計算所有形狀的繪製範圍
+     */
+    private Rectangle computeExtent() {
+        Rectangle extent = null;
+        for (BaseShape shape : shapes) {
+            if (extent == null) {
+                extent = shape.getPaintBounds();
+            } else {
+                extent.add(shape.getPaintBounds());
+            }
+        }
+        if (extent == null) {
+            extent = new Rectangle(0, 0, 1, 1);
+        }
+        extent.grow(MARGIN, MARGIN);
+        return extent;
+    }
+
+    /**
+     * 寫入一個形狀，群組會遞迴寫入成員
+     */
+    private void writeShape(BaseShape shape, Writer out, StringBuilder buffer) throws IOException {
+        if (shape instanceof CompositeShape group) {
+            out.write("<g>\n");
+            for (BaseShape child : group.getShapes()) {
+                writeShape(child, out, buffer);
+            }
+            out.write("</g>\n");
+            return;
+        }
+
+        buffer.setLength(0);
+        if (shape instanceof BasicShape basicShape) {
+            appendBasicShape(basicShape, buffer);
+        } else if (shape instanceof Link link) {
+            appendLink(link, buffer);
+        }
+        out.append(buffer);
+    }
+
+    /**
+     * 基本形狀：外形、UML 類別的分隔線、標籤
+     */
+    private void appendBasicShape(BasicShape shape, StringBuilder buffer) {
+        Rectangle bounds = shape.getBounds();
+        if (shape instanceof OvalShape) {
+            appendEllipse(bounds, "class=\"s\"", buffer);
+        } else {
+            appendRect(bounds, "class=\"s\"", buffer);
+        }
+
+        if (shape instanceof ShapeFactory.CustomRectShape classShape) {
+            for (int y : classShape.getSeparatorYs()) {
+                appendLine(bounds.x, y, bounds.x + bounds.width, y, buffer);
+            }
+        }
+
+        Rectangle frame = shape.getLabelFrame();
+        if (frame != null) {
+            String style = "fill=\"" + toHex(shape.getLabelColor()) + "\" stroke=\"#000\"";
+            if ("oval".equals(shape.getLabelShape())) {
+                appendEllipse(frame, style, buffer);
+            } else {
+                appendRect(frame, style, buffer);
+            }
+            buffer.append("<text x=\"").append(frame.x + frame.width / 2.0)
+                    .append("\" y=\"").append(frame.y + frame.height / 2.0)
+                    .append("\" font-size=\"").append(shape.getFontSize()).append("\">");
+            appendEscaped(shape.getName(), buffer);
+            buffer.append("</text>\n");
+        }
+    }
+
+    /**
+     * 連結：線段與箭頭多邊形
+     */
+    private void appendLink(Link link, StringBuilder buffer) {
+        Point start = link.getStartPoint();
+        Point end = link.getEndPoint();
+        appendLine(start.x, start.y, end.x, end.y, buffer);
+
+        Polygon arrow = link.getArrowHead();
+        if (arrow != null) {
+            // 泛化連結是空心三角形，其他連結是實心箭頭
+            buffer.append("<polygon class=\"").append(link instanceof GeneralizationLink ? 'h' : 'a')
+                    .append("\" points=\"");
+            for (int i = 0; i < arrow.npoints; i++) {
+                if (i > 0) {
+                    buffer.append(' ');
+                }
+                buffer.append(arrow.xpoints[i]).append(',').append(arrow.ypoints[i]);
+            }
+            buffer.append("\"/>\n");
+        }
+    }
+
+    private void appendRect(Rectangle r, String style, StringBuilder buffer) {
+        buffer.append("<rect x=\"").append(r.x).append("\" y=\"").append(r.y)
+                .append("\" width=\"").append(r.width).append("\" height=\"").append(r.height)
+                .append("\" ").append(style).append("/>\n");
+    }
+
+    private void appendEllipse(Rectangle r, String style, StringBuilder buffer) {
+        buffer.append("<ellipse cx=\"").append(r.x + r.width / 2.0).append("\" cy=\"").append(r.y + r.height / 2.0)
+                .append("\" rx=\"").append(r.width / 2.0).append("\" ry=\"").append(r.height / 2.0)
+                .append("\" ").append(style).append("/>\n");
+    }
+
+    private void appendLine(int x1, int y1, int x2, int y2, StringBuilder buffer) {
+        buffer.append("<line class=\"k\" x1=\"").append(x1).append("\" y1=\"").append(y1)
+                .append("\" x2=\"").append(x2).append("\" y2=\"").append(y2).append("\"/>\n");
+    }
+
+    /**
+     * 跳脫 XML 特殊字元，並略過 XML 不允許的控制字元
+     */
+    private void appendEscaped(String text, StringBuilder buffer) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&': buffer.append("&amp;"); break;
+                case '<': buffer.append("&lt;"); break;
+                case '>': buffer.append("&gt;"); break;
+                case '"': buffer.append("&quot;"); break;
+                default:
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        buffer.append(c);
+                    }
+            }
+        }
+    }
+
+    private static String toHex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+}
@@ -0,0 +1,225 @@
+package Export;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 分塊平行渲染器
+ * 將輸出範圍切成固定大小的圖塊，每個圖塊在 ForkJoinPool 的工作執行緒上以自己的圖塊影像繪製，
+ * 只繪製事先篩選出與圖塊相交的形狀，完成後再把像素拼回輸出緩衝區
+ *
+ * 形狀在渲染期間只會被讀取：DiagramRenderer 建立時已計算所有繪製範圍，
+ * 連結端點的快取也在那時更新完畢，因此多個執行緒可以同時繪製同一份形狀
+ */
+public class TiledRenderer {
+    static final int TILE_WIDTH = 512; // 圖塊寬度（像素）
+    static final int TILE_HEIGHT = 64; // 圖塊高度（像素）
+
+    private final DiagramRenderer renderer;
+    private final Color background;
+    private final ForkJoinPool pool;
+    // 每個工作執行緒重複使用自己的圖塊影像
+    private final ThreadLocal<BufferedImage> tileImage = ThreadLocal.withInitial(() ->
+            new BufferedImage(TILE_WIDTH, TILE_HEIGHT, BufferedImage.TYPE_INT_RGB));
+
+    /**
+     * 使用共用的 ForkJoinPool 建立渲染器
+     * @param renderer 圖形渲染器
+     * @param background 背景顏色
+     */
+    public TiledRenderer(DiagramRenderer renderer, Color background) {
+        this(renderer, background, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * 建立渲染器
+     * @param renderer 圖形渲染器
+     * @param background 背景顏色
+     * @param pool 執行圖塊的執行緒池
+     */
+    public TiledRenderer(DiagramRenderer renderer, Color background, ForkJoinPool pool) {
+        this.renderer = renderer;
+        this.background = background;
+        this.pool = pool;
+    }
+
+    /**
+     * 以指定的轉換繪製到既有的影像，供畫布重建背景影像使用
+     * 每個圖塊直接以裁切區域畫在影像上，轉換矩陣與單一執行緒繪製完全相同，
+     * 縮放比例不是整數時像素也不會因圖塊位移的捨入而不同；各圖塊寫入的像素不重疊
+     * @param image 輸出影像
+     * @param transform 模型座標到影像座標的轉換，只能包含等比例縮放與平移
+     */
+    public void render(BufferedImage image, AffineTransform transform) {
+        int allowed = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE;
+        double scale = transform.getScaleX();
+        if ((transform.getType() & ~allowed) != 0 || scale <= 0) {
+            throw new IllegalArgumentException("只支援等比例縮放與平移：" + transform);
+        }
+        int width = image.getWidth(), height = image.getHeight();
+        int columns = (width + TILE_WIDTH - 1) / TILE_WIDTH;
+        int rows = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        List<List<Integer>> tiles = bucketByTile(allShapes(), columns, rows,
+                -transform.getTranslateX() / scale, -transform.getTranslateY() / scale, scale);
+        pool.invoke(new TileTask(image, null, width, height, new AffineTransform(transform),
+                tiles, columns, 0, tiles.size()));
+    }
+
+    /**
+     * 繪製到像素緩衝區（每列 width 個像素，由上而下）
+     * @param pixels 輸出像素
+     * @param width 輸出寬度
+     * @param height 輸出高度
+     * @param modelX 輸出左上角的模型 x 座標
+     * @param modelY 輸出左上角的模型 y 座標
+     * @param scale 一個模型單位對應的像素數
+     * @param candidates 可能出現在輸出範圍內的形狀索引（遞增）
+     */
+    void renderInto(int[] pixels, int width, int height, double modelX, double modelY, double scale,
+                    List<Integer> candidates) {
+        AffineTransform view = AffineTransform.getScaleInstance(scale, scale);
+        view.translate(-modelX, -modelY);
+        renderInto(pixels, width, height, modelX, modelY, scale, view, candidates);
+    }
+
+    /**
+     * 繪製到像素緩衝區，view 為模型座標到輸出座標的轉換，modelX、modelY 與 scale 只用來分配圖塊
+     */
+    private void renderInto(int[] pixels, int width, int height, double modelX, double modelY, double scale,
+                            AffineTransform view, List<Integer> candidates) {
+        int columns = (width + TILE_WIDTH - 1) / TILE_WIDTH;
+        int rows = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+        List<List<Integer>> tiles = bucketByTile(candidates, columns, rows, modelX, modelY, scale);
+        pool.invoke(new TileTask(null, pixels, width, height, view, tiles, columns, 0, tiles.size()));
+    }
+
+    /**
+     * 將形狀分配到各圖塊，每個圖塊內保持繪製順序
+     */
+    private List<List<Integer>> bucketByTile(List<Integer> candidates, int columns, int rows,
+                                             double modelX, double modelY, double scale) {
+        List<List<Integer>> tiles = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            tiles.add(new ArrayList<>());
+        }
+        for (int index : candidates) {
+            Rectangle bounds = renderer.getPaintBounds(index);
+            int first = (int) Math.floor((bounds.x - modelX) * scale) / TILE_WIDTH;
+            int last = (int) Math.floor((bounds.x + bounds.width - modelX) * scale) / TILE_WIDTH;
+            int top = (int) Math.floor((bounds.y - modelY) * scale) / TILE_HEIGHT;
+            int bottom = (int) Math.floor((bounds.y + bounds.height - modelY) * scale) / TILE_HEIGHT;
+            for (int row = Math.max(0, top); row <= Math.min(rows - 1, bottom); row++) {
+                for (int column = Math.max(0, first); column <= Math.min(columns - 1, last); column++) {
+                    tiles.get(row * columns + column).add(index);
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private List<Integer> allShapes() {
+        List<Integer> all = new ArrayList<>(renderer.getShapeCount());
+        for (int i = 0; i < renderer.getShapeCount(); i++) {
+            all.add(i);
+        }
+        return all;
+    }
+
+    /**
+     * 以裁切區域直接在輸出影像上繪製一個圖塊
+     */
+    private void renderTile(BufferedImage target, int width, int height, AffineTransform view,
+                            int tileX, int tileY, List<Integer> tileShapes) {
+        Graphics2D g2d = target.createGraphics();
+        try {
+            g2d.setClip(tileX, tileY, Math.min(TILE_WIDTH, width - tileX), Math.min(TILE_HEIGHT, height - tileY));
+            g2d.setColor(background);
+            g2d.fillRect(tileX, tileY, TILE_WIDTH, TILE_HEIGHT);
+            if (!tileShapes.isEmpty()) {
+                g2d.transform(view);
+                renderer.render(g2d, tileShapes);
+            }
+        } finally {
+            g2d.dispose();
+        }
+    }
+
+    /**
+     * 繪製一個圖塊並把像素複製到輸出緩衝區
+     */
+    private void renderTile(int[] pixels, int width, int height, AffineTransform view,
+                            int tileX, int tileY, List<Integer> tileShapes) {
+        BufferedImage tile = tileImage.get();
+        Graphics2D g2d = tile.createGraphics();
+        try {
+            g2d.setColor(background);
+            g2d.fillRect(0, 0, TILE_WIDTH, TILE_HEIGHT);
+            if (!tileShapes.isEmpty()) {
+                g2d.setClip(0, 0, TILE_WIDTH, TILE_HEIGHT);
+                g2d.translate(-tileX, -tileY);
+                g2d.transform(view);
+                renderer.render(g2d, tileShapes); // 轉換後的裁切區域即為圖塊的模型範圍
+            }
+        } finally {
+            g2d.dispose();
+        }
+
+        int[] tilePixels = ((DataBufferInt) tile.getRaster().getDataBuffer()).getData();
+        int tileWidth = Math.min(TILE_WIDTH, width - tileX);
+        int tileHeight = Math.min(TILE_HEIGHT, height - tileY);
+        for (int row = 0; row < tileHeight; row++) {
+            System.arraycopy(tilePixels, row * TILE_WIDTH, pixels, (tileY + row) * width + tileX, tileWidth);
+        }
+    }
+
+    /**
+     * 圖塊範圍的工作，範圍大於一個圖塊時對半分割
+     * 每個圖塊寫入輸出緩衝區中不重疊的區域，不需要同步
+     */
+    private class TileTask extends RecursiveAction {
+        private final BufferedImage target; // 直接繪製的輸出影像，為 null 時寫入 pixels
+        private final int[] pixels;
+        private final int width, height;
+        private final AffineTransform view;
+        private final List<List<Integer>> tiles;
+        private final int columns;
+        private final int from, to; // 圖塊索引範圍 [from, to)
+
+        TileTask(BufferedImage target, int[] pixels, int width, int height, AffineTransform view,
+                 List<List<Integer>> tiles, int columns, int from, int to) {
+            this.target = target;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+            this.view = view;
+            this.tiles = tiles;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(target, pixels, width, height, view, tiles, columns, from, middle),
+                        new TileTask(target, pixels, width, height, view, tiles, columns, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int tileX = (i % columns) * TILE_WIDTH, tileY = (i / columns) * TILE_HEIGHT;
+                if (target != null) {
+                    renderTile(target, width, height, view, tileX, tileY, tiles.get(i));
+                } else {
+                    renderTile(pixels, width, height, view, tileX, tileY, tiles.get(i));
+                }
+            }
+        }
+    }
+}
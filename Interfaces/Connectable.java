@@ -17,10 +17,30 @@ public interface Connectable {
 
     /**
      * 取得所有連接埠
-     * @return 連接埠列表
+     * @return 連接埠列表（唯讀）
      */
     List<Point> getPorts();
 
+    /**
+     * 取得連接埠數量
+     * @return 連接埠數量
+     */
+    int getPortCount();
+
+    /**
+     * 取得連接埠的 x 座標
+     * @param index 連接埠索引
+     * @return x座標
+     */
+    int getPortX(int index);
+
+    /**
+     * 取得連接埠的 y 座標
+     * @param index 連接埠索引
+     * @return y座標
+     */
+    int getPortY(int index);
+
     /**
      * 更新連接埠位置
      */
@@ -1,5 +1,7 @@
 package Interfaces;
 
+import java.awt.Rectangle;
+
 /**
  * 形狀介面
  * 定義所有形狀物件需要實現的基本行為
@@ -17,4 +19,10 @@ public interface Shape extends Drawable, Selectable, Movable, Containable, Resiz
      * @return 深度值
      */
     int getDepth();
+
+    /**
+     * 取得邊界
+     * @return 包含整個物件的最小矩形
+     */
+    Rectangle getBounds();
 }
\ No newline at end of file
@@ -14,6 +14,8 @@ import java.awt.event.ActionListener;
  */
 public class Edit extends JMenu {
     private CanvasPanel canvasPanel;
+    private Undo undoItem;
+    private Redo redoItem;
     private Rename renameItem;
     private Group groupItem;
     private Ungroup ungroupItem;
@@ -25,6 +27,8 @@ public class Edit extends JMenu {
         super("Edit");
 
         // 建立選單項目
+        undoItem = new Undo(frame);
+        redoItem = new Redo(frame);
         renameItem = new Rename(frame);
         groupItem = new Group(frame);
         ungroupItem = new Ungroup(frame);
@@ -33,6 +37,9 @@ public class Edit extends JMenu {
         labelItem = new Label(frame);
 
         // 加入選單
+        this.add(undoItem);
+        this.add(redoItem);
+        this.addSeparator();
         this.add(renameItem);
         this.add(groupItem);
         this.add(ungroupItem);
@@ -49,6 +56,8 @@ public class Edit extends JMenu {
         this.canvasPanel = canvasPanel;
 
         // 更新所有子選單項目
+        undoItem.setCanvasPanel(canvasPanel);
+        redoItem.setCanvasPanel(canvasPanel);
         renameItem.setCanvasPanel(canvasPanel);
         groupItem.setCanvasPanel(canvasPanel);
         ungroupItem.setCanvasPanel(canvasPanel);
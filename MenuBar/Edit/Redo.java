@@ -0,0 +1,39 @@
+package MenuBar.Edit;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import Canvas.CanvasPanel;
+
+/**
+ * 重做選單項目類
+ */
+public class Redo extends JMenuItem {
+    private CanvasPanel canvasPanel;
+
+    public Redo(JFrame frame) {
+        super("Redo"); // 設定 JMenuItem 標題
+        setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+
+        // 加入事件監聽
+        this.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (canvasPanel != null) {
+                    canvasPanel.redo();
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Redo clicked");
+                }
+            }
+        });
+    }
+
+    /**
+     * 設定畫布面板
+     */
+    public void setCanvasPanel(CanvasPanel canvasPanel) {
+        this.canvasPanel = canvasPanel;
+    }
+}
@@ -3,6 +3,7 @@ package MenuBar.File;
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowEvent;
 
 public class Exit extends JMenuItem{
     // 建構子
@@ -13,7 +14,8 @@ public class Exit extends JMenuItem{
         this.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                System.exit(0);
+                // 與關閉窗口相同，讓窗口監聽器完成結束前的處理
+                frame.dispatchEvent(new WindowEvent(frame, WindowEvent.WINDOW_CLOSING));
             }
         });
     }
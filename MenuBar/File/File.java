@@ -11,7 +11,10 @@ import Canvas.CanvasPanel;
 public class File extends JMenu {
     private CanvasPanel canvasPanel;
     private NewFile newFileItem;
+    private OpenFile openFileItem;
+    private SaveDiagram saveDiagramItem;
     private SaveFile saveFileItem;
+    private SaveSvg saveSvgItem;
     private Exit exitItem;
 
     public File(JFrame frame) {
@@ -19,12 +22,18 @@ public class File extends JMenu {
 
         // 建立選單項目
         newFileItem = new NewFile(frame);
+        openFileItem = new OpenFile(frame);
+        saveDiagramItem = new SaveDiagram(frame);
         saveFileItem = new SaveFile(frame);
+        saveSvgItem = new SaveSvg(frame);
         exitItem = new Exit(frame);
 
         // 加入選單
         this.add(newFileItem);
+        this.add(openFileItem);
+        this.add(saveDiagramItem);
         this.add(saveFileItem);
+        this.add(saveSvgItem);
         this.addSeparator(); // 分隔線
         this.add(exitItem);
     }
@@ -37,6 +46,9 @@ public class File extends JMenu {
 
         // 更新子選單項目的畫布引用
         newFileItem.setCanvasPanel(canvasPanel);
+        openFileItem.setCanvasPanel(canvasPanel);
+        saveDiagramItem.setCanvasPanel(canvasPanel);
         saveFileItem.setCanvasPanel(canvasPanel);
+        saveSvgItem.setCanvasPanel(canvasPanel);
     }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package MenuBar.File;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import Canvas.CanvasPanel;
+import Persistence.Diagram;
+import Persistence.DiagramFormat;
+import Persistence.DiagramReader;
+import Persistence.MappedDiagram;
+
+/**
+ * 開啟圖檔選單項目類
+ */
+public class OpenFile extends JMenuItem {
+    private static final long LAZY_LOAD_THRESHOLD = 32L * 1024 * 1024; // 超過此大小的檔案改用延遲載入
+    private CanvasPanel canvasPanel;
+    private JFrame parentFrame;
+
+    // 建構子
+    public OpenFile(JFrame frame) {
+        super("Open Diagram"); // 設定 JMenuItem 標題
+        this.parentFrame = frame;
+
+        // 加入事件監聽
+        this.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (canvasPanel != null) {
+                    openDiagram();
+                } else {
+                    JOptionPane.showMessageDialog(frame, "無法開啟檔案");
+                }
+            }
+        });
+    }
+
+    /**
+     * 選擇並載入圖檔
+     */
+    private void openDiagram() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("開啟圖檔");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                "UML 圖檔", DiagramFormat.FILE_EXTENSION));
+
+        if (fileChooser.showOpenDialog(parentFrame) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+            try {
+                if (file.length() > LAZY_LOAD_THRESHOLD) {
+                    // 大型圖檔只映射檔案，形狀在捲動到時才建立
+                    canvasPanel.openLazyDiagram(MappedDiagram.open(file.toPath()));
+                } else {
+                    Diagram diagram = new DiagramReader().read(file.toPath());
+                    canvasPanel.loadShapes(diagram.getShapes(), diagram.getNextDepth());
+                }
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(
+                        parentFrame,
+                        "開啟時發生錯誤：" + ex.getMessage(),
+                        "錯誤",
+                        JOptionPane.ERROR_MESSAGE
+                );
+            }
+        }
+    }
+
+    /**
+     * 設定畫布面板
+     */
+    public void setCanvasPanel(CanvasPanel canvasPanel) {
+        this.canvasPanel = canvasPanel;
+    }
+}
@@ -0,0 +1,77 @@
+package MenuBar.File;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import Canvas.CanvasPanel;
+import Persistence.Diagram;
+import Persistence.DiagramFormat;
+import Persistence.DiagramWriter;
+
+/**
+ * 儲存圖檔選單項目類
+ * 以原生二進位格式儲存，之後可以重新開啟編輯
+ */
+public class SaveDiagram extends JMenuItem {
+    private CanvasPanel canvasPanel;
+    private JFrame parentFrame;
+
+    // 建構子
+    public SaveDiagram(JFrame frame) {
+        super("Save Diagram"); // 設定 JMenuItem 標題
+        this.parentFrame = frame;
+
+        // 加入事件監聽
+        this.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (canvasPanel != null) {
+                    saveDiagram();
+                } else {
+                    JOptionPane.showMessageDialog(frame, "無法儲存檔案");
+                }
+            }
+        });
+    }
+
+    /**
+     * 選擇檔案並儲存圖形
+     */
+    private void saveDiagram() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("儲存圖檔");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter(
+                "UML 圖檔", DiagramFormat.FILE_EXTENSION));
+
+        if (fileChooser.showSaveDialog(parentFrame) == JFileChooser.APPROVE_OPTION) {
+            try {
+                File file = fileChooser.getSelectedFile();
+
+                // 確保檔案有正確的副檔名
+                if (!file.getName().toLowerCase().endsWith("." + DiagramFormat.FILE_EXTENSION)) {
+                    file = new File(file.getAbsolutePath() + "." + DiagramFormat.FILE_EXTENSION);
+                }
+
+                canvasPanel.loadAllRegions(); // 延遲載入的區域必須先全部載入才能完整寫出
+                Diagram diagram = new Diagram(canvasPanel.getShapes(), canvasPanel.getNextDepth());
+                new DiagramWriter().write(diagram, file.toPath());
+                JOptionPane.showMessageDialog(parentFrame, "已成功儲存檔案：" + file.getName());
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(
+                        parentFrame,
+                        "儲存時發生錯誤：" + ex.getMessage(),
+                        "錯誤",
+                        JOptionPane.ERROR_MESSAGE
+                );
+            }
+        }
+    }
+
+    /**
+     * 設定畫布面板
+     */
+    public void setCanvasPanel(CanvasPanel canvasPanel) {
+        this.canvasPanel = canvasPanel;
+    }
+}
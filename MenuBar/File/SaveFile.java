@@ -4,10 +4,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
-import javax.imageio.ImageIO;
+import java.util.concurrent.atomic.AtomicBoolean;
 import Canvas.CanvasPanel;
+import Export.DiagramImageExporter;
 
 /**
  * 儲存檔案選單項目類
@@ -35,7 +35,7 @@ public class SaveFile extends JMenuItem {
     }
 
     /**
-     * 將畫布儲存為PNG檔案
+     * 將整份圖形儲存為PNG檔案
      */
     private void saveCanvasAsPNG() {
         JFileChooser fileChooser = new JFileChooser();
@@ -43,46 +43,85 @@ public class SaveFile extends JMenuItem {
         fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("PNG 圖像檔", "png"));
 
         if (fileChooser.showSaveDialog(parentFrame) == JFileChooser.APPROVE_OPTION) {
-            try {
-                // 取得選擇的文件
-                File file = fileChooser.getSelectedFile();
+            // 取得選擇的文件
+            File file = fileChooser.getSelectedFile();
 
-                // 確保檔案有.png副檔名
-                if (!file.getName().toLowerCase().endsWith(".png")) {
-                    file = new File(file.getAbsolutePath() + ".png");
-                }
+            // 確保檔案有.png副檔名
+            if (!file.getName().toLowerCase().endsWith(".png")) {
+                file = new File(file.getAbsolutePath() + ".png");
+            }
 
-                // 建立與畫布相同大小的緩衝圖像
-                Component canvas = canvasPanel;
-                BufferedImage image = new BufferedImage(
-                        canvas.getWidth(),
-                        canvas.getHeight(),
-                        BufferedImage.TYPE_INT_RGB
-                );
+            // 匯出整份圖形，延遲載入的區域必須先全部載入
+            canvasPanel.loadAllRegions();
+            DiagramImageExporter exporter = new DiagramImageExporter(canvasPanel.getShapes(), canvasPanel.getBackground());
+            exportInBackground(exporter, file);
+        }
+    }
 
-                // 繪製畫布內容到緩衝圖像
-                Graphics2D g2d = image.createGraphics();
-                g2d.setColor(Color.WHITE);
-                g2d.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
-                canvas.paint(g2d);
-                g2d.dispose();
+    /**
+     * 在背景執行緒匯出，期間顯示可取消的進度對話框
+     * 對話框為 modal，匯出時使用者無法修改圖形；取消只設定旗標，
+     * 對話框要等匯出真正停止、寫到一半的檔案刪除之後才關閉
+     */
+    private void exportInBackground(DiagramImageExporter exporter, File file) {
+        JDialog progressDialog = new JDialog(parentFrame, "匯出PNG", true);
+        JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        JButton cancelButton = new JButton("取消");
+        AtomicBoolean cancelled = new AtomicBoolean();
 
-                // 儲存圖像
-                if (ImageIO.write(image, "png", file)) {
-                    JOptionPane.showMessageDialog(parentFrame, "已成功儲存檔案：" + file.getName());
-                } else {
-                    JOptionPane.showMessageDialog(parentFrame, "儲存失敗：無法寫入檔案格式");
+        SwingWorker<Boolean, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                return exporter.exportPng(file.toPath(), (completedRows, totalRows) -> {
+                    setProgress((int) (100L * completedRows / totalRows));
+                    return !cancelled.get();
+                });
+            }
+
+            @Override
+            protected void done() {
+                progressDialog.dispose();
+                try {
+                    if (get()) { // 被取消時回傳 false，寫到一半的檔案已被刪除
+                        JOptionPane.showMessageDialog(parentFrame, "已成功儲存檔案：" + file.getName());
+                    }
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(
+                            parentFrame,
+                            "儲存時發生錯誤：" + cause.getMessage(),
+                            "錯誤",
+                            JOptionPane.ERROR_MESSAGE
+                    );
                 }
+            }
+        };
 
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(
-                        parentFrame,
-                        "儲存時發生錯誤：" + ex.getMessage(),
-                        "錯誤",
-                        JOptionPane.ERROR_MESSAGE
-                );
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                progressBar.setValue((Integer) event.getNewValue());
             }
-        }
+        });
+        cancelButton.addActionListener(event -> {
+            cancelled.set(true);
+            cancelButton.setEnabled(false);
+            cancelButton.setText("正在取消...");
+        });
+
+        Rectangle extent = exporter.getExtent();
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(new JLabel("正在匯出 " + extent.width + " x " + extent.height + " 像素的圖像..."), BorderLayout.NORTH);
+        panel.add(progressBar, BorderLayout.CENTER);
+        panel.add(cancelButton, BorderLayout.SOUTH);
+        progressDialog.setContentPane(panel);
+        progressDialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        progressDialog.pack();
+        progressDialog.setLocationRelativeTo(parentFrame);
+
+        worker.execute();
+        progressDialog.setVisible(true); // 阻擋到 done() 關閉對話框為止
     }
 
     /**
@@ -0,0 +1,130 @@
+package MenuBar.File;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
+import Canvas.CanvasPanel;
+import Export.SvgExporter;
+
+/**
+ * 儲存 SVG 選單項目類
+ * 以向量格式匯出整份圖形，檔案大小與形狀數量成正比
+ */
+public class SaveSvg extends JMenuItem {
+    private CanvasPanel canvasPanel;
+    private JFrame parentFrame;
+
+    // 建構子
+    public SaveSvg(JFrame frame) {
+        super("Save as SVG"); // 設定 JMenuItem 標題
+        this.parentFrame = frame;
+
+        // 加入事件監聽
+        this.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (canvasPanel != null) {
+                    saveCanvasAsSVG();
+                } else {
+                    JOptionPane.showMessageDialog(frame, "無法儲存檔案");
+                }
+            }
+        });
+    }
+
+    /**
+     * 將整份圖形儲存為SVG檔案
+     */
+    private void saveCanvasAsSVG() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("儲存為SVG");
+        fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("SVG 向量圖檔", "svg"));
+
+        if (fileChooser.showSaveDialog(parentFrame) == JFileChooser.APPROVE_OPTION) {
+            File file = fileChooser.getSelectedFile();
+
+            // 確保檔案有.svg副檔名
+            if (!file.getName().toLowerCase().endsWith(".svg")) {
+                file = new File(file.getAbsolutePath() + ".svg");
+            }
+
+            canvasPanel.loadAllRegions(); // 延遲載入的區域必須先全部載入才能完整匯出
+            exportInBackground(new SvgExporter(canvasPanel.getShapes()), file, canvasPanel.getShapes().size());
+        }
+    }
+
+    /**
+     * 在背景執行緒匯出，期間顯示可取消的進度對話框
+     * 對話框為 modal，匯出時使用者無法修改圖形；取消只設定旗標，
+     * 對話框要等匯出真正停止、寫到一半的檔案刪除之後才關閉
+     */
+    private void exportInBackground(SvgExporter exporter, File file, int shapeCount) {
+        JDialog progressDialog = new JDialog(parentFrame, "匯出SVG", true);
+        JProgressBar progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        JButton cancelButton = new JButton("取消");
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        SwingWorker<Boolean, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                return exporter.export(file.toPath(), (completedShapes, totalShapes) -> {
+                    setProgress((int) (100L * completedShapes / totalShapes));
+                    return !cancelled.get();
+                });
+            }
+
+            @Override
+            protected void done() {
+                progressDialog.dispose();
+                try {
+                    if (get()) { // 被取消時回傳 false，寫到一半的檔案已被刪除
+                        JOptionPane.showMessageDialog(parentFrame, "已成功儲存檔案：" + file.getName());
+                    }
+                } catch (Exception ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(
+                            parentFrame,
+                            "儲存時發生錯誤：" + cause.getMessage(),
+                            "錯誤",
+                            JOptionPane.ERROR_MESSAGE
+                    );
+                }
+            }
+        };
+
+        worker.addPropertyChangeListener(event -> {
+            if ("progress".equals(event.getPropertyName())) {
+                progressBar.setValue((Integer) event.getNewValue());
+            }
+        });
+        cancelButton.addActionListener(event -> {
+            cancelled.set(true);
+            cancelButton.setEnabled(false);
+            cancelButton.setText("正在取消...");
+        });
+
+        JPanel panel = new JPanel(new BorderLayout(0, 8));
+        panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        panel.add(new JLabel("正在匯出 " + shapeCount + " 個形狀..."), BorderLayout.NORTH);
+        panel.add(progressBar, BorderLayout.CENTER);
+        panel.add(cancelButton, BorderLayout.SOUTH);
+        progressDialog.setContentPane(panel);
+        progressDialog.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        progressDialog.pack();
+        progressDialog.setLocationRelativeTo(parentFrame);
+
+        worker.execute();
+        progressDialog.setVisible(true); // 阻擋到 done() 關閉對話框為止
+    }
+
+    /**
+     * 設定畫布面板
+     */
+    public void setCanvasPanel(CanvasPanel canvasPanel) {
+        this.canvasPanel = canvasPanel;
+    }
+}
@@ -0,0 +1,593 @@
+package Persistence;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import Canvas.CanvasPanel;
+import Shapes.*;
+
+/**
+ * 自動儲存日誌
+ * 畫布的每次變動在事件分派執行緒上編碼成一筆小的二進位紀錄，交給背景執行緒附加到日誌檔
+ * 背景執行緒批次呼叫 fsync，並依序重播紀錄維護一份獨立的圖形副本，
+ * 日誌過大或經過一段時間後，以副本寫出檢查點並開始新的日誌，事件分派執行緒不會等待任何磁碟 I/O
+ *
+ * 程式正常結束時刪除日誌；異常結束後，下次啟動可以從檢查點與日誌復原
+ * 同一個目錄同時只能由一個編輯器使用
+ */
+public class AutosaveJournal implements CanvasPanel.ChangeJournal {
+    private static final long SYNC_INTERVAL_MS = 500; // fsync 的最長間隔
+    private static final long CHECKPOINT_BYTES = 8L << 20; // 日誌超過此大小時寫出檢查點
+    private static final long CHECKPOINT_INTERVAL_MS = 60_000; // 有變動時寫出檢查點的最長間隔
+    private static final long SHUTDOWN_TIMEOUT_MS = 5_000; // 結束時等待寫入完成的時間
+    private static final byte[] STOP = new byte[0]; // 停止寫入執行緒的標記
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final int previousGeneration; // 復原來源的日誌世代
+    private final Diagram recovered; // 上次未正常結束時的圖形，沒有時為 null
+    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private volatile boolean failed = false; // 寫入失敗後停止記錄
+    private volatile boolean discard = false; // 結束時刪除日誌
+    private Thread writerThread;
+
+    // 以下只在事件分派執行緒上使用
+    private final RecordBuffer record = new RecordBuffer();
+    private final Map<BaseShape, Integer> ids = new WeakHashMap<>(); // 形狀沒有覆寫 equals，以參考比對
+    private int nextId = 0;
+    private BaseShape[] lastMoveSet = new BaseShape[0];
+    private boolean suspended = false;
+
+    // 以下只在寫入執行緒上使用
+    private final JournalReplica replica = new JournalReplica();
+    private final RecordBuffer writerRecord = new RecordBuffer();
+    private final CRC32 crc = new CRC32();
+    private FileChannel journalChannel;
+    private ChannelDataOutput journalOutput;
+    private int generation;
+    private long journalBytes;
+    private long recordsSinceCheckpoint;
+    private long lastCheckpoint;
+
+    /**
+     * 紀錄內容的寫入動作
+     */
+    private interface RecordBody {
+        void write(ChannelDataOutput output) throws IOException;
+    }
+
+    /**
+     * 在記憶體中編碼一筆紀錄
+     */
+    private static class RecordBuffer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ChannelDataOutput output = new ChannelDataOutput(Channels.newChannel(bytes));
+
+        byte[] encode(RecordBody body) throws IOException {
+            body.write(output);
+            output.flush();
+            byte[] result = bytes.toByteArray();
+            bytes.reset();
+            return result;
+        }
+    }
+
+    private AutosaveJournal(Path directory, FileChannel lockChannel, int previousGeneration, Diagram recovered) {
+        this.directory = directory;
+        this.lockChannel = lockChannel;
+        this.previousGeneration = previousGeneration;
+        this.recovered = recovered;
+    }
+
+    /**
+     * 取得預設的自動儲存目錄
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".umleditor", "autosave");
+    }
+
+    /**
+     * 開啟自動儲存目錄並讀取上次留下的日誌
+     * 會讀取檔案，應在背景執行緒呼叫
+     * @param directory 自動儲存目錄
+     * @return 日誌，目錄正被其他編輯器使用時回傳 null
+     */
+    public static AutosaveJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel lockChannel = FileChannel.open(directory.resolve(JournalFormat.LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            lockChannel.close();
+            return null;
+        }
+
+        Path journal = directory.resolve(JournalFormat.JOURNAL_FILE);
+        if (!Files.exists(journal)) {
+            return new AutosaveJournal(directory, lockChannel, 0, null);
+        }
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ);
+             ChannelDataInput input = new ChannelDataInput(channel)) {
+            int generation = readHeader(input);
+            boolean hasCheckpoint = input.readByte() != 0;
+            JournalReplica replica = new JournalReplica();
+            if (hasCheckpoint) {
+                replica.loadCheckpoint(new DiagramReader().read(
+                        directory.resolve(JournalFormat.checkpointFile(generation))));
+            }
+            replayRecords(input, channel.size() - JournalFormat.HEADER_SIZE, replica);
+
+            Diagram diagram = replica.toDiagram();
+            return new AutosaveJournal(directory, lockChannel, generation,
+                    diagram.getShapes().isEmpty() ? null : diagram);
+        } catch (IOException e) {
+            System.err.println("無法讀取自動儲存日誌：" + e.getMessage());
+            return new AutosaveJournal(directory, lockChannel, 0, null);
+        }
+    }
+
+    /**
+     * 取得上次未正常結束時的圖形
+     * @return 圖形，沒有可復原的內容時回傳 null
+     */
+    public Diagram getRecoveredDiagram() {
+        return recovered;
+    }
+
+    /**
+     * 啟動寫入執行緒，開始新的日誌
+     * 之前的日誌會被取代，應在決定是否復原之後呼叫
+     */
+    public void start() {
+        writerThread = new Thread(this::runWriter, "autosave-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::awaitShutdown, "autosave-shutdown"));
+    }
+
+    /**
+     * 停止記錄
+     * 寫入執行緒會寫完已排入的紀錄，程式結束前最多等待 SHUTDOWN_TIMEOUT_MS
+     * @param discardJournal 是否刪除日誌（正常結束時）
+     */
+    public void close(boolean discardJournal) {
+        discard = discardJournal;
+        suspended = true;
+        if (writerThread == null) {
+            // 尚未啟動，只需釋放目錄的檔案鎖
+            try {
+                lockChannel.close();
+            } catch (IOException ignored) {
+                // 釋放檔案鎖失敗不影響資料
+            }
+            return;
+        }
+        queue.add(STOP);
+    }
+
+    @Override
+    public void inserted(List<BaseShape> shapes, int[] positions, boolean restored) {
+        submit(output -> {
+            output.writeByte(JournalFormat.TAG_INSERT);
+            output.writeByte(restored ? 1 : 0);
+            output.writeInt(shapes.size());
+            for (int i = 0; i < shapes.size(); i++) {
+                output.writeInt(positions[i]);
+                writeElement(shapes.get(i), output);
+            }
+        });
+    }
+
+    @Override
+    public void removed(List<BaseShape> shapes, boolean deleted) {
+        submit(output -> {
+            output.writeByte(JournalFormat.TAG_REMOVE);
+            output.writeByte(deleted ? 1 : 0);
+            writeIds(shapes, output);
+        });
+    }
+
+    /**
+     * 拖曳期間每個事件都移動同一批形狀，只在集合改變時寫出一次編號，之後每筆移動紀錄固定 9 位元組
+     */
+    @Override
+    public void moved(List<BaseShape> shapes, int dx, int dy) {
+        if (!isSameMoveSet(shapes)) {
+            lastMoveSet = shapes.toArray(new BaseShape[0]);
+            submit(output -> {
+                output.writeByte(JournalFormat.TAG_MOVE_SET);
+                writeIds(shapes, output);
+            });
+        }
+        submit(output -> {
+            output.writeByte(JournalFormat.TAG_MOVE);
+            output.writeInt(dx);
+            output.writeInt(dy);
+        });
+    }
+
+    @Override
+    public void labelChanged(BasicShape shape) {
+        submit(output -> {
+            output.writeByte(JournalFormat.TAG_LABEL);
+            output.writeInt(idOf(shape));
+            writeLabel(shape, output);
+        });
+    }
+
+    @Override
+    public void reset(List<BaseShape> shapes, int nextDepth) {
+        suspended = false;
+        lastMoveSet = new BaseShape[0];
+        submit(output -> {
+            output.writeByte(JournalFormat.TAG_RESET);
+            output.writeInt(nextDepth);
+        });
+        if (!shapes.isEmpty()) {
+            int[] positions = new int[shapes.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            inserted(shapes, positions, false);
+        }
+    }
+
+    @Override
+    public void suspend() {
+        reset(List.of(), 0);
+        suspended = true;
+    }
+
+    /**
+     * 編碼紀錄並交給寫入執行緒
+     */
+    private void submit(RecordBody body) {
+        if (suspended || failed) {
+            return;
+        }
+        try {
+            queue.add(record.encode(body));
+        } catch (IOException e) {
+            // 寫入記憶體不會失敗，發生時停止記錄
+            fail(e);
+        }
+    }
+
+    private boolean isSameMoveSet(List<BaseShape> shapes) {
+        if (shapes.size() != lastMoveSet.length) {
+            return false;
+        }
+        for (int i = 0; i < lastMoveSet.length; i++) {
+            if (shapes.get(i) != lastMoveSet[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int idOf(BaseShape shape) {
+        Integer id = ids.get(shape);
+        if (id == null) {
+            id = nextId++;
+            ids.put(shape, id);
+        }
+        return id;
+    }
+
+    private void writeIds(List<BaseShape> shapes, ChannelDataOutput output) throws IOException {
+        output.writeInt(shapes.size());
+        for (BaseShape shape : shapes) {
+            output.writeInt(idOf(shape));
+        }
+    }
+
+    /**
+     * 寫入元素的完整內容，群組會遞迴寫入子元素
+     */
+    private void writeElement(BaseShape shape, ChannelDataOutput output) throws IOException {
+        if (shape instanceof BasicShape basicShape) {
+            Rectangle bounds = basicShape.getBounds();
+            output.writeByte(DiagramFormat.TAG_SHAPE);
+            output.writeInt(idOf(basicShape));
+            output.writeByte(DiagramWriter.shapeKindOf(basicShape));
+            output.writeInt(basicShape.getDepth());
+            output.writeInt(bounds.x);
+            output.writeInt(bounds.y);
+            output.writeInt(bounds.width);
+            output.writeInt(bounds.height);
+            writeLabel(basicShape, output);
+        } else if (shape instanceof Link link) {
+            Point start = link.getStartPoint();
+            Point end = link.getEndPoint();
+            output.writeByte(DiagramFormat.TAG_LINK);
+            output.writeInt(idOf(link));
+            output.writeByte(DiagramWriter.linkKindOf(link));
+            output.writeInt(link.getDepth());
+            output.writeInt(link.getStartShape() == null ? DiagramFormat.NO_SHAPE : idOf(link.getStartShape()));
+            output.writeByte(link.getStartPortIndex());
+            output.writeInt(link.getEndShape() == null ? DiagramFormat.NO_SHAPE : idOf(link.getEndShape()));
+            output.writeByte(link.getEndPortIndex());
+            output.writeInt(start.x);
+            output.writeInt(start.y);
+            output.writeInt(end.x);
+            output.writeInt(end.y);
+        } else if (shape instanceof CompositeShape group) {
+            output.writeByte(DiagramFormat.TAG_GROUP);
+            output.writeInt(idOf(group));
+            output.writeInt(group.getDepth());
+            output.writeInt(group.getShapeCount());
+            for (BaseShape child : group.getShapes()) {
+                writeElement(child, output);
+            }
+        } else {
+            throw new IOException("無法記錄的形狀：" + shape.getClass().getSimpleName());
+        }
+    }
+
+    private static void writeLabel(BasicShape shape, ChannelDataOutput output) throws IOException {
+        output.writeString(shape.getName());
+        output.writeByte("oval".equals(shape.getLabelShape()) ? DiagramFormat.LABEL_OVAL : DiagramFormat.LABEL_RECT);
+        output.writeInt(shape.getLabelColor().getRGB());
+        output.writeShort(shape.getFontSize());
+    }
+
+    private void fail(Exception e) {
+        failed = true;
+        queue.clear();
+        System.err.println("自動儲存已停止：" + e.getMessage());
+    }
+
+    /**
+     * 寫入執行緒
+     * 取出所有已排入的紀錄後一次寫入，距離上次 fsync 超過 SYNC_INTERVAL_MS 或暫時沒有新紀錄時才 fsync
+     */
+    private void runWriter() {
+        try {
+            beginGeneration(previousGeneration + 1, false);
+            deleteCheckpointsExcept(-1);
+            lastCheckpoint = System.currentTimeMillis();
+            long lastSync = lastCheckpoint;
+            boolean unsynced = false;
+            boolean running = true;
+
+            while (running) {
+                byte[] next = queue.poll(SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                boolean idle = next == null;
+                while (next != null) {
+                    if (next == STOP) {
+                        running = false;
+                        break;
+                    }
+                    append(next);
+                    unsynced = true;
+                    next = queue.poll();
+                }
+                journalOutput.flush();
+
+                long now = System.currentTimeMillis();
+                if (unsynced && (idle || !running || now - lastSync >= SYNC_INTERVAL_MS)) {
+                    journalChannel.force(false);
+                    lastSync = now;
+                    unsynced = false;
+                }
+                if (running && recordsSinceCheckpoint > 0 && (journalBytes >= CHECKPOINT_BYTES
+                        || now - lastCheckpoint >= CHECKPOINT_INTERVAL_MS)) {
+                    writeCheckpoint();
+                }
+            }
+            journalChannel.close();
+            if (discard) {
+                Files.deleteIfExists(directory.resolve(JournalFormat.JOURNAL_FILE));
+                deleteCheckpointsExcept(-1);
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                lockChannel.close();
+            } catch (IOException ignored) {
+                // 結束時釋放檔案鎖失敗不影響資料
+            }
+        }
+    }
+
+    /**
+     * 寫入一個紀錄框，並套用到副本
+     */
+    private void append(byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload);
+        journalOutput.writeInt(payload.length);
+        journalOutput.write(payload);
+        journalOutput.writeInt((int) crc.getValue());
+        journalBytes += Integer.BYTES * 2 + payload.length;
+        recordsSinceCheckpoint++;
+        replica.apply(new ChannelDataInput(ByteBuffer.wrap(payload)));
+    }
+
+    /**
+     * 以副本寫出檢查點，再以新世代的日誌取代舊日誌
+     * 檢查點先寫到暫存檔並 fsync 後才改名，任何時間點中斷都留有一組一致的檢查點與日誌
+     */
+    private void writeCheckpoint() throws IOException {
+        int next = generation + 1;
+        Path checkpoint = directory.resolve(JournalFormat.checkpointFile(next));
+        Path temporary = directory.resolve(checkpoint.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ChannelDataOutput output = new ChannelDataOutput(channel);
+            new DiagramWriter().write(replica.toDiagram(), output);
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        replica.retainTree();
+        beginGeneration(next, true);
+        deleteCheckpointsExcept(next);
+        recordsSinceCheckpoint = 0;
+        lastCheckpoint = System.currentTimeMillis();
+    }
+
+    /**
+     * 建立新世代的日誌，寫好檔頭與起始紀錄並 fsync 後才取代舊日誌
+     * @param nextGeneration 新的世代
+     * @param hasCheckpoint 是否套用在該世代的檢查點之上
+     */
+    private void beginGeneration(int nextGeneration, boolean hasCheckpoint) throws IOException {
+        Path journal = directory.resolve(JournalFormat.JOURNAL_FILE);
+        Path temporary = directory.resolve(JournalFormat.JOURNAL_FILE + ".tmp");
+        if (journalChannel != null) {
+            journalOutput.flush();
+            journalChannel.close();
+        }
+
+        FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ChannelDataOutput output = new ChannelDataOutput(channel);
+        output.writeInt(JournalFormat.MAGIC);
+        output.writeShort(JournalFormat.VERSION);
+        output.writeInt(nextGeneration);
+        output.writeByte(hasCheckpoint ? 1 : 0);
+        journalChannel = channel;
+        journalOutput = output;
+        journalBytes = JournalFormat.HEADER_SIZE;
+
+        if (hasCheckpoint) {
+            // 檢查點不含日誌編號，依前序走訪順序重新指定；拖曳中的移動集合也一併寫入
+            int[] treeIds = replica.preorderIds();
+            int[] moveSetIds = replica.moveSetIds();
+            writeFrame(writerRecord.encode(out -> {
+                out.writeByte(JournalFormat.TAG_IDS);
+                writeIntArray(treeIds, out);
+            }));
+            writeFrame(writerRecord.encode(out -> {
+                out.writeByte(JournalFormat.TAG_MOVE_SET);
+                writeIntArray(moveSetIds, out);
+            }));
+        }
+        output.flush();
+        channel.force(true);
+        Files.move(temporary, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        generation = nextGeneration;
+    }
+
+    /**
+     * 寫入不需套用到副本的紀錄框（副本已是該狀態）
+     */
+    private void writeFrame(byte[] payload) throws IOException {
+        crc.reset();
+        crc.update(payload);
+        journalOutput.writeInt(payload.length);
+        journalOutput.write(payload);
+        journalOutput.writeInt((int) crc.getValue());
+        journalBytes += Integer.BYTES * 2 + payload.length;
+    }
+
+    private void deleteCheckpointsExcept(int keptGeneration) throws IOException {
+        String kept = JournalFormat.checkpointFile(keptGeneration);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, JournalFormat.CHECKPOINT_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(kept)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 程式結束時停止寫入執行緒並等待已排入的紀錄寫完
+     */
+    private void awaitShutdown() {
+        if (writerThread == null || !writerThread.isAlive()) {
+            return;
+        }
+        if (!queue.contains(STOP)) {
+            queue.add(STOP);
+        }
+        try {
+            writerThread.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeIntArray(int[] values, ChannelDataOutput output) throws IOException {
+        output.writeInt(values.length);
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    /**
+     * 驗證檔頭
+     * @return 日誌世代
+     */
+    private static int readHeader(ChannelDataInput input) throws IOException {
+        if (input.readInt() != JournalFormat.MAGIC) {
+            throw new IOException("不是有效的自動儲存日誌");
+        }
+        short version = input.readShort();
+        if (version > JournalFormat.VERSION) {
+            throw new IOException("不支援的日誌版本：" + version);
+        }
+        return input.readInt();
+    }
+
+    /**
+     * 依序重播紀錄框，遇到不完整或檢查碼不符的紀錄框（寫到一半時中斷）即停止
+     * @param remaining 檔頭之後的位元組數，用來排除損毀的長度欄位
+     */
+    private static void replayRecords(ChannelDataInput input, long remaining, JournalReplica replica) throws IOException {
+        CRC32 checksum = new CRC32();
+        while (remaining >= Integer.BYTES * 2) {
+            byte[] payload;
+            int expected;
+            try {
+                int length = input.readInt();
+                if (length <= 0 || length > remaining - Integer.BYTES * 2) {
+                    return;
+                }
+                payload = new byte[length];
+                input.readFully(payload);
+                expected = input.readInt();
+                remaining -= Integer.BYTES * 2 + length;
+            } catch (EOFException e) {
+                return;
+            }
+
+            checksum.reset();
+            checksum.update(payload);
+            if ((int) checksum.getValue() != expected) {
+                return;
+            }
+            replica.apply(new ChannelDataInput(ByteBuffer.wrap(payload)));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package Persistence;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 緩衝通道輸入
+ * 從通道讀入固定大小的直接緩衝區，依序解碼基本型別
+ * 也可以直接包裝已在記憶體中的緩衝區（例如記憶體映射檔）
+ */
+class ChannelDataInput implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel; // 為 null 時表示直接讀取 buffer
+    private final ByteBuffer buffer;
+
+    /**
+     * 從通道讀取
+     * @param channel 輸入通道
+     */
+    public ChannelDataInput(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.flip(); // 一開始沒有可讀資料
+    }
+
+    /**
+     * 直接讀取記憶體中的緩衝區
+     * @param buffer 資料緩衝區，從目前位置開始讀
+     */
+    public ChannelDataInput(ByteBuffer buffer) {
+        this.channel = null;
+        this.buffer = buffer;
+    }
+
+    public byte readByte() throws IOException {
+        ensureAvailable(Byte.BYTES);
+        return buffer.get();
+    }
+
+    public short readShort() throws IOException {
+        ensureAvailable(Short.BYTES);
+        return buffer.getShort();
+    }
+
+    public int readInt() throws IOException {
+        ensureAvailable(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    /**
+     * 讀取前置位元組長度的 UTF-8 字串
+     * @return 字串
+     */
+    public String readString() throws IOException {
+        int length = readInt();
+        if (length < 0 || length > remaining()) { // 損毀的長度不可用來配置陣列
+            throw new IOException("字串長度錯誤：" + length);
+        }
+
+        byte[] bytes = new byte[length];
+        readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 讀滿整個位元組陣列
+     * @param bytes 讀取目標
+     */
+    public void readFully(byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensureAvailable(1);
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.get(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    /**
+     * 略過指定位元組數
+     * @param bytes 位元組數
+     */
+    public void skip(int bytes) throws IOException {
+        while (bytes > 0) {
+            ensureAvailable(1);
+            int chunk = Math.min(buffer.remaining(), bytes);
+            buffer.position(buffer.position() + chunk);
+            bytes -= chunk;
+        }
+    }
+
+    /**
+     * 取得尚未讀取的位元組數
+     * 無法得知通道大小時回傳 Long.MAX_VALUE
+     * @return 剩餘位元組數
+     */
+    public long remaining() throws IOException {
+        if (channel == null) {
+            return buffer.remaining();
+        }
+        if (channel instanceof SeekableByteChannel seekable) {
+            return buffer.remaining() + Math.max(0, seekable.size() - seekable.position());
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * 取得目前讀取位置
+     * 只對包裝記憶體緩衝區的輸入有意義，通道輸入的位置是相對於內部緩衝區
+     * @return 緩衝區內的位置
+     */
+    public int position() {
+        return buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * 確保緩衝區內至少有指定位元組數可讀，不足時從通道補充
+     */
+    private void ensureAvailable(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        if (channel == null) {
+            throw new EOFException("檔案意外結束");
+        }
+
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("檔案意外結束");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,31 @@
+package Persistence;
+
+import java.util.List;
+import Shapes.BaseShape;
+
+/**
+ * 圖檔內容
+ * 保存畫布上的頂層形狀（依繪製順序）與下一個形狀的深度值
+ */
+public class Diagram {
+    private final List<BaseShape> shapes;
+    private final int nextDepth;
+
+    /**
+     * 建構函數
+     * @param shapes 頂層形狀
+     * @param nextDepth 下一個形狀的深度值
+     */
+    public Diagram(List<BaseShape> shapes, int nextDepth) {
+        this.shapes = shapes;
+        this.nextDepth = nextDepth;
+    }
+
+    public List<BaseShape> getShapes() {
+        return shapes;
+    }
+
+    public int getNextDepth() {
+        return nextDepth;
+    }
+}
@@ -0,0 +1,48 @@
+package Persistence;
+
+/**
+ * UML 圖檔格式常數
+ * 檔案由檔頭與一連串的元素紀錄組成，群組紀錄內巢狀包含子元素，以 TAG_END 結尾
+ *
+ * 檔頭：MAGIC(int) VERSION(short) nextDepth(int)
+ * 形狀：TAG_SHAPE kind(byte) id(int) depth(int) x y width height(int) name(string)
+ *       labelShape(byte) labelColor(int ARGB) fontSize(short)
+ * 連結：TAG_LINK kind(byte) depth(int) startId(int) startPort(byte) endId(int) endPort(byte)
+ *       startX startY endX endY(int)
+ * 群組：TAG_GROUP depth(int) childCount(int) 後接 childCount 個子元素
+ */
+public final class DiagramFormat {
+    public static final String FILE_EXTENSION = "umld";
+
+    static final int MAGIC = 0x554D4C44; // "UMLD"
+    static final short VERSION = 1;
+
+    // 紀錄標籤
+    static final byte TAG_END = 0;
+    static final byte TAG_SHAPE = 1;
+    static final byte TAG_LINK = 2;
+    static final byte TAG_GROUP = 3;
+
+    // 形狀種類
+    static final byte SHAPE_RECT = 0;
+    static final byte SHAPE_OVAL = 1;
+    static final byte SHAPE_CLASS = 2; // ShapeFactory.CustomRectShape
+    static final byte SHAPE_USE_CASE = 3; // ShapeFactory.CustomOvalShape
+
+    // 連結種類
+    static final byte LINK_ASSOCIATION = 0;
+    static final byte LINK_GENERALIZATION = 1;
+    static final byte LINK_COMPOSITION = 2;
+
+    // 標籤外框
+    static final byte LABEL_RECT = 0;
+    static final byte LABEL_OVAL = 1;
+
+    static final int NO_SHAPE = -1; // 連結端點沒有連接形狀
+
+    // 讀取時允許的群組巢狀層數，群組以遞迴讀取，超過時視為損毀的檔案而不是讓堆疊溢位
+    static final int MAX_GROUP_NESTING = 1024;
+
+    private DiagramFormat() {
+    }
+}
@@ -0,0 +1,283 @@
+package Persistence;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import Shapes.*;
+
+/**
+ * 圖檔讀取器
+ * 一次串流讀入所有紀錄並直接建立形狀物件
+ * 連結的端點形狀可能出現在連結之後，這些連結會在讀完後統一連接
+ */
+public class DiagramReader {
+    /**
+     * 每個形狀編號至少佔用的檔案位元組數
+     * 編號從 0 起依序配給寫入的基本形狀與連結端點，最小的連結紀錄有 32 位元組、兩個端點編號，
+     * 因此合法的編號一定小於檔案大小除以此值
+     */
+    private static final int MIN_BYTES_PER_ID = 16;
+
+    private BasicShape[] shapesById = new BasicShape[256]; // 檔案內編號 -> 基本形狀
+    private int idLimit = Integer.MAX_VALUE; // 合法編號的上限（不含）
+    private final List<PendingLink> pendingLinks = new ArrayList<>(); // 等待端點形狀的連結
+    private final Map<String, String> labels = new HashMap<>(); // 標籤文字表，相同名稱的形狀共用同一個字串
+
+    /**
+     * 尚未連接的連結
+     */
+    private static class PendingLink {
+        final Link link;
+        final int startId, startPort, endId, endPort;
+
+        PendingLink(Link link, int startId, int startPort, int endId, int endPort) {
+            this.link = link;
+            this.startId = startId;
+            this.startPort = startPort;
+            this.endId = endId;
+            this.endPort = endPort;
+        }
+    }
+
+    /**
+     * 從檔案讀取圖形
+     * @param path 檔案路徑
+     * @return 圖形內容
+     */
+    public Diagram read(Path path) throws IOException {
+        try (ChannelDataInput input = new ChannelDataInput(FileChannel.open(path, StandardOpenOption.READ))) {
+            return read(input);
+        }
+    }
+
+    /**
+     * 從輸入讀取圖形
+     * @param input 輸入
+     * @return 圖形內容
+     */
+    Diagram read(ChannelDataInput input) throws IOException {
+        Arrays.fill(shapesById, null);
+        pendingLinks.clear();
+        limitIds(input.remaining());
+
+        int nextDepth = readHeader(input);
+        List<BaseShape> shapes = new ArrayList<>();
+        byte tag;
+        while ((tag = input.readByte()) != DiagramFormat.TAG_END) {
+            shapes.add(readElement(tag, input));
+        }
+
+        for (PendingLink pending : pendingLinks) {
+            pending.link.connect(shapeOf(pending.startId), pending.startPort,
+                    shapeOf(pending.endId), pending.endPort);
+        }
+        return new Diagram(shapes, nextDepth);
+    }
+
+    /**
+     * 讀取單一頂層紀錄
+     * 用於延遲載入：端點尚未載入的連結會留在等待清單中
+     * @param input 位於紀錄開頭的輸入
+     * @return 建立的形狀
+     */
+    BaseShape readRecord(ChannelDataInput input) throws IOException {
+        return readElement(input.readByte(), input);
+    }
+
+    /**
+     * 連接端點形狀都已載入的等待中連結
+     */
+    void resolvePendingLinks() {
+        pendingLinks.removeIf(pending -> {
+            BasicShape start = shapeOf(pending.startId);
+            BasicShape end = shapeOf(pending.endId);
+            boolean startReady = pending.startId == DiagramFormat.NO_SHAPE || start != null;
+            boolean endReady = pending.endId == DiagramFormat.NO_SHAPE || end != null;
+            if (startReady && endReady) {
+                pending.link.connect(start, pending.startPort, end, pending.endPort);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 忘記已釋放的形狀，之後的連結不會再連到它
+     * @param id 檔案內編號
+     */
+    void forget(int id) {
+        if (id >= 0 && id < shapesById.length) {
+            shapesById[id] = null;
+        }
+    }
+
+    /**
+     * 依檔案大小限制形狀編號，損毀的編號不會配置過大的對照表
+     * @param fileBytes 圖檔的位元組數
+     */
+    void limitIds(long fileBytes) {
+        idLimit = maxIdFor(fileBytes);
+    }
+
+    /**
+     * 取得指定大小的圖檔中合法編號的上限（不含）
+     */
+    static int maxIdFor(long fileBytes) {
+        return (int) Math.min(Integer.MAX_VALUE, fileBytes / MIN_BYTES_PER_ID);
+    }
+
+    /**
+     * 驗證檔頭
+     * @return 下一個形狀的深度值
+     */
+    static int readHeader(ChannelDataInput input) throws IOException {
+        if (input.readInt() != DiagramFormat.MAGIC) {
+            throw new IOException("不是有效的 UML 圖檔");
+        }
+        short version = input.readShort();
+        if (version > DiagramFormat.VERSION) {
+            throw new IOException("不支援的檔案版本：" + version);
+        }
+        return input.readInt();
+    }
+
+    /**
+     * 讀取一個元素
+     * @param tag 已讀入的紀錄標籤
+     */
+    BaseShape readElement(byte tag, ChannelDataInput input) throws IOException {
+        return readElement(tag, input, 0);
+    }
+
+    /**
+     * 讀取一個元素
+     * @param nesting 元素所在的群組層數，頂層為 0
+     */
+    private BaseShape readElement(byte tag, ChannelDataInput input, int nesting) throws IOException {
+        switch (tag) {
+            case DiagramFormat.TAG_SHAPE:
+                return readShape(input);
+            case DiagramFormat.TAG_LINK:
+                return readLink(input);
+            case DiagramFormat.TAG_GROUP:
+                return readGroup(input, nesting);
+            default:
+                throw new IOException("未知的紀錄類型：" + tag);
+        }
+    }
+
+    private BasicShape readShape(ChannelDataInput input) throws IOException {
+        byte kind = input.readByte();
+        int id = input.readInt();
+        int depth = input.readInt();
+        int x = input.readInt();
+        int y = input.readInt();
+        int width = input.readInt();
+        int height = input.readInt();
+        String name = labels.computeIfAbsent(input.readString(), text -> text);
+        byte labelShape = input.readByte();
+        int labelColor = input.readInt();
+        short fontSize = input.readShort();
+
+        BasicShape shape = createShape(kind, x, y, width, height);
+        shape.setDepth(depth);
+        shape.setName(name);
+        shape.setLabelShape(labelShape == DiagramFormat.LABEL_OVAL ? "oval" : "rect");
+        shape.setLabelColor(new Color(labelColor, true));
+        shape.setFontSize(fontSize);
+        register(id, shape);
+        return shape;
+    }
+
+    private Link readLink(ChannelDataInput input) throws IOException {
+        byte kind = input.readByte();
+        int depth = input.readInt();
+        int startId = input.readInt();
+        int startPort = input.readByte();
+        int endId = input.readInt();
+        int endPort = input.readByte();
+        Point start = new Point(input.readInt(), input.readInt());
+        Point end = new Point(input.readInt(), input.readInt());
+
+        Link link = createLink(kind, start);
+        link.setEndPoint(end);
+        link.setDepth(depth);
+
+        BasicShape startShape = shapeOf(startId);
+        BasicShape endShape = shapeOf(endId);
+        boolean startReady = startId == DiagramFormat.NO_SHAPE || startShape != null;
+        boolean endReady = endId == DiagramFormat.NO_SHAPE || endShape != null;
+        if (startReady && endReady) {
+            link.connect(startShape, startPort, endShape, endPort);
+        } else {
+            pendingLinks.add(new PendingLink(link, startId, startPort, endId, endPort));
+        }
+        return link;
+    }
+
+    private CompositeShape readGroup(ChannelDataInput input, int nesting) throws IOException {
+        if (nesting >= DiagramFormat.MAX_GROUP_NESTING) {
+            throw new IOException("群組巢狀層數過深：" + nesting);
+        }
+        int depth = input.readInt();
+        int childCount = input.readInt();
+
+        CompositeShape group = new CompositeShape();
+        group.setDepth(depth);
+        for (int i = 0; i < childCount; i++) {
+            group.addShape(readElement(input.readByte(), input, nesting + 1));
+        }
+        return group;
+    }
+
+    static BasicShape createShape(byte kind, int x, int y, int width, int height) throws IOException {
+        Point start = new Point(x, y);
+        switch (kind) {
+            case DiagramFormat.SHAPE_CLASS:
+                return new ShapeFactory.CustomRectShape(start);
+            case DiagramFormat.SHAPE_USE_CASE:
+                return new ShapeFactory.CustomOvalShape(start);
+            case DiagramFormat.SHAPE_RECT:
+            case DiagramFormat.SHAPE_OVAL:
+                BasicShape shape = kind == DiagramFormat.SHAPE_RECT ? new RectShape(start) : new OvalShape(start);
+                shape.resize(start, new Point(x + width, y + height));
+                return shape;
+            default:
+                throw new IOException("未知的形狀種類：" + kind);
+        }
+    }
+
+    static Link createLink(byte kind, Point start) throws IOException {
+        switch (kind) {
+            case DiagramFormat.LINK_ASSOCIATION:
+                return new AssociationLink(start);
+            case DiagramFormat.LINK_GENERALIZATION:
+                return new GeneralizationLink(start);
+            case DiagramFormat.LINK_COMPOSITION:
+                return new CompositionLink(start);
+            default:
+                throw new IOException("未知的連結種類：" + kind);
+        }
+    }
+
+    private void register(int id, BasicShape shape) throws IOException {
+        if (id < 0 || id >= idLimit) {
+            throw new IOException("形狀編號錯誤：" + id);
+        }
+        if (id >= shapesById.length) {
+            shapesById = Arrays.copyOf(shapesById, Math.max(id + 1, shapesById.length * 2));
+        }
+        shapesById[id] = shape;
+    }
+
+    private BasicShape shapeOf(int id) {
+        return id >= 0 && id < shapesById.length ? shapesById[id] : null;
+    }
+}
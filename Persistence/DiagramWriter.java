@@ -0,0 +1,140 @@
+package Persistence;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import Shapes.*;
+
+/**
+ * 圖檔寫入器
+ * 依繪製順序走訪形狀樹，一次串流寫出所有紀錄，不建立中間文件結構
+ */
+public class DiagramWriter {
+    private final Map<BasicShape, Integer> shapeIds = new IdentityHashMap<>(); // 基本形狀 -> 檔案內的編號
+
+    /**
+     * 將圖形寫入檔案
+     * 先寫入同目錄的暫存檔並寫回磁碟，完成後再以原子搬移取代原檔，
+     * 寫到一半失敗或當機時原本的檔案保持完整
+     * @param diagram 圖形內容
+     * @param path 檔案路徑
+     */
+    public void write(Diagram diagram, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ChannelDataOutput output = new ChannelDataOutput(channel);
+                write(diagram, output);
+                output.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * 將圖形寫入輸出
+     * @param diagram 圖形內容
+     * @param output 輸出
+     */
+    void write(Diagram diagram, ChannelDataOutput output) throws IOException {
+        shapeIds.clear();
+        output.writeInt(DiagramFormat.MAGIC);
+        output.writeShort(DiagramFormat.VERSION);
+        output.writeInt(diagram.getNextDepth());
+
+        for (BaseShape shape : diagram.getShapes()) {
+            writeElement(shape, output);
+        }
+        output.writeByte(DiagramFormat.TAG_END);
+    }
+
+    /**
+     * 寫入單一元素，群組會遞迴寫入子元素
+     */
+    private void writeElement(BaseShape shape, ChannelDataOutput output) throws IOException {
+        if (shape instanceof BasicShape basicShape) {
+            writeShape(basicShape, output);
+        } else if (shape instanceof Link link) {
+            writeLink(link, output);
+        } else if (shape instanceof CompositeShape group) {
+            output.writeByte(DiagramFormat.TAG_GROUP);
+            output.writeInt(group.getDepth());
+            output.writeInt(group.getShapeCount());
+            for (BaseShape child : group.getShapes()) {
+                writeElement(child, output);
+            }
+        }
+        // 選取框等暫時性形狀不寫入
+    }
+
+    private void writeShape(BasicShape shape, ChannelDataOutput output) throws IOException {
+        Rectangle bounds = shape.getBounds();
+        output.writeByte(DiagramFormat.TAG_SHAPE);
+        output.writeByte(shapeKindOf(shape));
+        output.writeInt(idOf(shape));
+        output.writeInt(shape.getDepth());
+        output.writeInt(bounds.x);
+        output.writeInt(bounds.y);
+        output.writeInt(bounds.width);
+        output.writeInt(bounds.height);
+        output.writeString(shape.getName());
+        output.writeByte("oval".equals(shape.getLabelShape()) ? DiagramFormat.LABEL_OVAL : DiagramFormat.LABEL_RECT);
+        output.writeInt(shape.getLabelColor().getRGB());
+        output.writeShort(shape.getFontSize());
+    }
+
+    private void writeLink(Link link, ChannelDataOutput output) throws IOException {
+        Point start = link.getStartPoint();
+        Point end = link.getEndPoint();
+        output.writeByte(DiagramFormat.TAG_LINK);
+        output.writeByte(linkKindOf(link));
+        output.writeInt(link.getDepth());
+        output.writeInt(link.getStartShape() == null ? DiagramFormat.NO_SHAPE : idOf(link.getStartShape()));
+        output.writeByte(link.getStartPortIndex());
+        output.writeInt(link.getEndShape() == null ? DiagramFormat.NO_SHAPE : idOf(link.getEndShape()));
+        output.writeByte(link.getEndPortIndex());
+        output.writeInt(start.x);
+        output.writeInt(start.y);
+        output.writeInt(end.x);
+        output.writeInt(end.y);
+    }
+
+    /**
+     * 取得基本形狀的編號，第一次遇到時配發
+     * 連結可能先於其端點形狀被寫出，因此編號不一定依寫出順序
+     */
+    private int idOf(BasicShape shape) {
+        return shapeIds.computeIfAbsent(shape, s -> shapeIds.size());
+    }
+
+    static byte shapeKindOf(BasicShape shape) {
+        if (shape instanceof ShapeFactory.CustomRectShape) {
+            return DiagramFormat.SHAPE_CLASS;
+        } else if (shape instanceof ShapeFactory.CustomOvalShape) {
+            return DiagramFormat.SHAPE_USE_CASE;
+        } else if (shape instanceof OvalShape) {
+            return DiagramFormat.SHAPE_OVAL;
+        }
+        return DiagramFormat.SHAPE_RECT;
+    }
+
+    static byte linkKindOf(Link link) {
+        if (link instanceof GeneralizationLink) {
+            return DiagramFormat.LINK_GENERALIZATION;
+        } else if (link instanceof CompositionLink) {
+            return DiagramFormat.LINK_COMPOSITION;
+        }
+        return DiagramFormat.LINK_ASSOCIATION;
+    }
+}
@@ -0,0 +1,58 @@
+package Persistence;
+
+/**
+ * 自動儲存日誌格式常數
+ * 日誌由檔頭與一連串的紀錄框組成，每個紀錄框描述畫布的一次變動
+ * 寫到一半的最後一個紀錄框會因長度不足或檢查碼不符而被忽略
+ *
+ * 檔頭：MAGIC(int) VERSION(short) generation(int) hasCheckpoint(byte)
+ *       hasCheckpoint 為 1 時，日誌套用在 checkpoint-<generation>.umld 之上，否則從空白畫布開始
+ * 紀錄框：length(int) payload(length bytes) crc32(int)
+ *
+ * payload 第一個位元組為紀錄標籤：
+ * 重設：TAG_RESET nextDepth(int)，清空畫布
+ * 插入：TAG_INSERT restored(byte) count(int) 後接 count 組 position(int) element
+ *       position 為插入後在頂層列表中的位置（遞增），restored 為 1 時重新連接元素內的連結
+ * 移除：TAG_REMOVE deleted(byte) count(int) id(int)...，deleted 為 1 時拆離元素內的連結
+ * 移動集合：TAG_MOVE_SET count(int) id(int)...，設定之後 TAG_MOVE 移動的頂層元素
+ * 移動：TAG_MOVE dx(int) dy(int)
+ * 標籤：TAG_LABEL id(int) name(string) labelShape(byte) labelColor(int ARGB) fontSize(short)
+ * 編號：TAG_IDS count(int) id(int)...，依前序走訪檢查點形狀樹的順序指定元素編號
+ *
+ * element 與圖檔的元素紀錄相同，但每個元素（包含連結與群組）都帶有日誌編號，
+ * 已知編號的元素沿用現有物件：
+ * 形狀：TAG_SHAPE id(int) kind(byte) depth(int) x y width height(int) name(string)
+ *       labelShape(byte) labelColor(int ARGB) fontSize(short)
+ * 連結：TAG_LINK id(int) kind(byte) depth(int) startId(int) startPort(byte) endId(int) endPort(byte)
+ *       startX startY endX endY(int)
+ * 群組：TAG_GROUP id(int) depth(int) childCount(int) 後接 childCount 個子元素
+ */
+final class JournalFormat {
+    static final String JOURNAL_FILE = "journal.umlj";
+    static final String CHECKPOINT_PREFIX = "checkpoint-";
+    static final String LOCK_FILE = "autosave.lock";
+
+    static final int MAGIC = 0x554D4C4A; // "UMLJ"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES + Byte.BYTES;
+
+    // 紀錄標籤
+    static final byte TAG_RESET = 1;
+    static final byte TAG_INSERT = 2;
+    static final byte TAG_REMOVE = 3;
+    static final byte TAG_MOVE_SET = 4;
+    static final byte TAG_MOVE = 5;
+    static final byte TAG_LABEL = 6;
+    static final byte TAG_IDS = 7;
+
+    private JournalFormat() {
+    }
+
+    /**
+     * 取得檢查點的檔名
+     * @param generation 日誌世代
+     */
+    static String checkpointFile(int generation) {
+        return CHECKPOINT_PREFIX + generation + "." + DiagramFormat.FILE_EXTENSION;
+    }
+}
@@ -0,0 +1,403 @@
+package Persistence;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import Shapes.*;
+
+/**
+ * 日誌重播的圖形副本
+ * 依序套用日誌紀錄，重建與畫布相同的頂層形狀列表
+ * 寫入執行緒以它維護一份與畫布分離的副本來寫出檢查點，啟動時以它從日誌復原
+ * 只由單一執行緒使用
+ */
+class JournalReplica {
+    private final List<BaseShape> shapes = new ArrayList<>(); // 頂層形狀（依繪製順序）
+    private final Map<Integer, BaseShape> elements = new HashMap<>(); // 日誌編號 -> 元素
+    private final Map<BaseShape, Integer> ids = new IdentityHashMap<>(); // 元素 -> 日誌編號
+    private final List<PendingLink> pendingLinks = new ArrayList<>(); // 等待連接端點的連結
+    private BaseShape[] moveSet = new BaseShape[0]; // TAG_MOVE 移動的元素
+    private int nextDepth = 0;
+
+    /**
+     * 尚未連接的連結，同一筆紀錄的元素都建立後才連接
+     */
+    private static class PendingLink {
+        final Link link;
+        final int startId, startPort, endId, endPort;
+
+        PendingLink(Link link, int startId, int startPort, int endId, int endPort) {
+            this.link = link;
+            this.startId = startId;
+            this.startPort = startPort;
+            this.endId = endId;
+            this.endPort = endPort;
+        }
+    }
+
+    /**
+     * 以檢查點的內容作為起點，元素編號由之後的 TAG_IDS 紀錄指定
+     * @param checkpoint 檢查點圖形
+     */
+    public void loadCheckpoint(Diagram checkpoint) {
+        clear();
+        shapes.addAll(checkpoint.getShapes());
+        nextDepth = checkpoint.getNextDepth();
+    }
+
+    /**
+     * 套用一筆紀錄
+     * @param input 位於紀錄標籤的輸入
+     */
+    public void apply(ChannelDataInput input) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+            case JournalFormat.TAG_RESET:
+                clear();
+                nextDepth = input.readInt();
+                break;
+            case JournalFormat.TAG_INSERT:
+                applyInsert(input);
+                break;
+            case JournalFormat.TAG_REMOVE:
+                applyRemove(input);
+                break;
+            case JournalFormat.TAG_MOVE_SET:
+                moveSet = readElementIds(input).toArray(new BaseShape[0]);
+                break;
+            case JournalFormat.TAG_MOVE:
+                applyMove(input.readInt(), input.readInt());
+                break;
+            case JournalFormat.TAG_LABEL:
+                applyLabel(input);
+                break;
+            case JournalFormat.TAG_IDS:
+                applyIds(input);
+                break;
+            default:
+                throw new IOException("未知的日誌紀錄類型：" + tag);
+        }
+    }
+
+    /**
+     * 取得目前的圖形內容（直接引用副本的列表）
+     */
+    public Diagram toDiagram() {
+        return new Diagram(shapes, nextDepth);
+    }
+
+    /**
+     * 依前序走訪形狀樹取得元素編號，寫入檢查點後作為新日誌的 TAG_IDS 紀錄
+     */
+    public int[] preorderIds() {
+        List<BaseShape> order = new ArrayList<>();
+        for (BaseShape shape : shapes) {
+            collectPreorder(shape, order);
+        }
+        int[] result = new int[order.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(order.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 取得移動集合中仍在形狀樹內的元素編號
+     */
+    public int[] moveSetIds() {
+        Set<BaseShape> topLevel = Collections.newSetFromMap(new IdentityHashMap<>());
+        topLevel.addAll(shapes);
+        int[] result = new int[moveSet.length];
+        int count = 0;
+        for (BaseShape shape : moveSet) {
+            Integer id = ids.get(shape);
+            if (id != null && topLevel.contains(shape)) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * 只保留形狀樹中的元素，與從檢查點復原時的狀態一致
+     * 已移除的元素之後若被重新插入，會依紀錄中的完整內容重新建立
+     */
+    public void retainTree() {
+        List<BaseShape> order = new ArrayList<>();
+        for (BaseShape shape : shapes) {
+            collectPreorder(shape, order);
+        }
+        Map<BaseShape, Integer> kept = new IdentityHashMap<>();
+        for (BaseShape shape : order) {
+            kept.put(shape, ids.get(shape));
+        }
+        ids.clear();
+        elements.clear();
+        for (Map.Entry<BaseShape, Integer> entry : kept.entrySet()) {
+            ids.put(entry.getKey(), entry.getValue());
+            elements.put(entry.getValue(), entry.getKey());
+        }
+    }
+
+    private void clear() {
+        shapes.clear();
+        elements.clear();
+        ids.clear();
+        moveSet = new BaseShape[0];
+        nextDepth = 0;
+    }
+
+    private void applyInsert(ChannelDataInput input) throws IOException {
+        boolean restored = input.readByte() != 0;
+        int count = input.readInt();
+        if (count < 0 || count > input.remaining() / (Integer.BYTES + Byte.BYTES)) { // 每個元素至少有位置與標籤
+            throw new IOException("元素數量錯誤：" + count);
+        }
+        BaseShape[] items = new BaseShape[count];
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = input.readInt();
+            items[i] = readElement(input.readByte(), input);
+        }
+        connectPendingLinks();
+
+        if (restored) {
+            for (BaseShape item : items) {
+                forEachLink(item, Link::reattach);
+            }
+        }
+        insertAll(items, positions);
+    }
+
+    private void applyRemove(ChannelDataInput input) throws IOException {
+        boolean deleted = input.readByte() != 0;
+        List<BaseShape> removed = readElementIds(input);
+        Set<BaseShape> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+        targets.addAll(removed);
+        shapes.removeIf(targets::contains);
+        if (deleted) {
+            for (BaseShape shape : removed) {
+                forEachLink(shape, Link::detach);
+            }
+        }
+    }
+
+    /**
+     * 移動集合中的元素，連結端點由連接埠推得，不需要另外更新
+     */
+    private void applyMove(int dx, int dy) {
+        for (BaseShape shape : moveSet) {
+            shape.move(dx, dy);
+        }
+    }
+
+    private void applyLabel(ChannelDataInput input) throws IOException {
+        BaseShape element = elements.get(input.readInt());
+        String name = input.readString();
+        byte labelShape = input.readByte();
+        int labelColor = input.readInt();
+        short fontSize = input.readShort();
+        if (element instanceof BasicShape shape) {
+            applyLabel(shape, name, labelShape, labelColor, fontSize);
+        }
+    }
+
+    private void applyIds(ChannelDataInput input) throws IOException {
+        List<BaseShape> order = new ArrayList<>();
+        for (BaseShape shape : shapes) {
+            collectPreorder(shape, order);
+        }
+        int count = input.readInt();
+        if (count != order.size()) {
+            throw new IOException("檢查點與日誌不一致：" + count + " / " + order.size());
+        }
+        for (BaseShape shape : order) {
+            register(input.readInt(), shape);
+        }
+    }
+
+    /**
+     * 讀取一個元素，已知編號的元素沿用現有物件（仍需讀完其內容）
+     */
+    private BaseShape readElement(byte tag, ChannelDataInput input) throws IOException {
+        return readElement(tag, input, 0);
+    }
+
+    /**
+     * 讀取一個元素
+     * @param nesting 元素所在的群組層數，頂層為 0
+     */
+    private BaseShape readElement(byte tag, ChannelDataInput input, int nesting) throws IOException {
+        int id = input.readInt();
+        BaseShape known = elements.get(id);
+        BaseShape element;
+        switch (tag) {
+            case DiagramFormat.TAG_SHAPE:
+                element = readShape(input, known == null);
+                break;
+            case DiagramFormat.TAG_LINK:
+                element = readLink(input, known == null);
+                break;
+            case DiagramFormat.TAG_GROUP:
+                element = readGroup(input, known == null, nesting);
+                break;
+            default:
+                throw new IOException("未知的元素類型：" + tag);
+        }
+        if (known != null) {
+            return known;
+        }
+        nextDepth = Math.max(nextDepth, element.getDepth() + 1);
+        register(id, element);
+        return element;
+    }
+
+    private BasicShape readShape(ChannelDataInput input, boolean create) throws IOException {
+        byte kind = input.readByte();
+        int depth = input.readInt();
+        int x = input.readInt();
+        int y = input.readInt();
+        int width = input.readInt();
+        int height = input.readInt();
+        String name = input.readString();
+        byte labelShape = input.readByte();
+        int labelColor = input.readInt();
+        short fontSize = input.readShort();
+        if (!create) {
+            return null;
+        }
+
+        BasicShape shape = DiagramReader.createShape(kind, x, y, width, height);
+        shape.setDepth(depth);
+        applyLabel(shape, name, labelShape, labelColor, fontSize);
+        return shape;
+    }
+
+    private Link readLink(ChannelDataInput input, boolean create) throws IOException {
+        byte kind = input.readByte();
+        int depth = input.readInt();
+        int startId = input.readInt();
+        int startPort = input.readByte();
+        int endId = input.readInt();
+        int endPort = input.readByte();
+        Point start = new Point(input.readInt(), input.readInt());
+        Point end = new Point(input.readInt(), input.readInt());
+        if (!create) {
+            return null;
+        }
+
+        Link link = DiagramReader.createLink(kind, start);
+        link.setEndPoint(end);
+        link.setDepth(depth);
+        pendingLinks.add(new PendingLink(link, startId, startPort, endId, endPort));
+        return link;
+    }
+
+    private CompositeShape readGroup(ChannelDataInput input, boolean create, int nesting) throws IOException {
+        if (nesting >= DiagramFormat.MAX_GROUP_NESTING) {
+            throw new IOException("群組巢狀層數過深：" + nesting);
+        }
+        int depth = input.readInt();
+        int childCount = input.readInt();
+        CompositeShape group = create ? new CompositeShape() : null;
+        for (int i = 0; i < childCount; i++) {
+            BaseShape child = readElement(input.readByte(), input, nesting + 1);
+            if (group != null) {
+                group.addShape(child);
+            }
+        }
+        if (group != null) {
+            group.setDepth(depth);
+        }
+        return group;
+    }
+
+    private void connectPendingLinks() {
+        for (PendingLink pending : pendingLinks) {
+            pending.link.connect(basicShapeOf(pending.startId), pending.startPort,
+                    basicShapeOf(pending.endId), pending.endPort);
+        }
+        pendingLinks.clear();
+    }
+
+    private List<BaseShape> readElementIds(ChannelDataInput input) throws IOException {
+        int count = input.readInt();
+        List<BaseShape> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            BaseShape element = elements.get(input.readInt());
+            if (element != null) {
+                result.add(element);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 將元素插入頂層列表，插入在最後的情況不需合併
+     */
+    private void insertAll(BaseShape[] items, int[] positions) {
+        if (items.length == 0) {
+            return;
+        }
+        if (positions[0] >= shapes.size()) {
+            Collections.addAll(shapes, items);
+            return;
+        }
+        List<BaseShape> merged = new ArrayList<>(shapes.size() + items.length);
+        int next = 0;
+        for (BaseShape shape : shapes) {
+            while (next < items.length && positions[next] == merged.size()) {
+                merged.add(items[next++]);
+            }
+            merged.add(shape);
+        }
+        while (next < items.length) {
+            merged.add(items[next++]);
+        }
+        shapes.clear();
+        shapes.addAll(merged);
+    }
+
+    private void register(int id, BaseShape element) {
+        elements.put(id, element);
+        ids.put(element, id);
+    }
+
+    private BasicShape basicShapeOf(int id) {
+        return elements.get(id) instanceof BasicShape shape ? shape : null;
+    }
+
+    private static void applyLabel(BasicShape shape, String name, byte labelShape, int labelColor, short fontSize) {
+        shape.setName(name);
+        shape.setLabelShape(labelShape == DiagramFormat.LABEL_OVAL ? "oval" : "rect");
+        shape.setLabelColor(new Color(labelColor, true));
+        shape.setFontSize(fontSize);
+    }
+
+    private static void forEachLink(BaseShape shape, Consumer<Link> action) {
+        if (shape instanceof Link link) {
+            action.accept(link);
+        } else if (shape instanceof CompositeShape group) {
+            for (BaseShape leaf : group.getLeafShapes()) {
+                forEachLink(leaf, action);
+            }
+        }
+    }
+
+    private static void collectPreorder(BaseShape shape, List<BaseShape> order) {
+        order.add(shape);
+        if (shape instanceof CompositeShape group) {
+            for (BaseShape child : group.getShapes()) {
+                collectPreorder(child, order);
+            }
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package Persistence;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import Canvas.CanvasPanel;
+import Shapes.*;
+
+/**
+ * 記憶體映射圖檔
+ * 以 FileChannel.map 映射整個檔案，只掃描一次紀錄標頭建立區塊索引，不建立任何形狀物件
+ * 形狀與連結只在所在區塊進入可視範圍時才解碼，離開後再釋放，需要時從映射檔重新讀取
+ *
+ * 載入單位是頂層紀錄；連結的端點形狀若在其他紀錄中，該紀錄也會一起載入
+ * 被選取或被連結到的紀錄會被固定，之後不再釋放，以免遺失使用者的修改
+ */
+public class MappedDiagram implements CanvasPanel.RegionLoader {
+    private static final int TILE_SIZE = 1024; // 區塊邊長（模型座標）
+    private static final int PREFETCH_MARGIN = 256; // 預先載入可視範圍外的距離
+    private static final int KEEP_MARGIN = 2048; // 超出可視範圍此距離才釋放
+
+    private final ByteBuffer mapped; // 映射的檔案內容
+    private final int nextDepth;
+    private final int idLimit; // 合法形狀編號的上限（不含），依檔案大小決定
+    private final DiagramReader reader = new DiagramReader();
+
+    // 頂層紀錄資訊（以紀錄編號為索引）
+    private int recordCount = 0;
+    private int[] offsets = new int[1024];
+    private int[] minX = new int[1024], minY = new int[1024], maxX = new int[1024], maxY = new int[1024];
+    private final IntList definedIds = new IntList(); // 各紀錄定義的形狀編號（依紀錄串接）
+    private int[] definedStart = new int[1025];
+    private final IntList referencedIds = new IntList(); // 各紀錄中連結參考的形狀編號
+    private int[] referencedStart = new int[1025];
+    private int[] ownerOfId = newOwnerTable(1024); // 形狀編號 -> 定義它的紀錄，-1 表示不存在
+
+    private final Map<Long, IntList> tiles = new HashMap<>(); // 區塊座標 -> 與其相交的紀錄
+
+    // 載入狀態
+    private final BitSet loaded = new BitSet();
+    private final BitSet pinned = new BitSet();
+    private boolean fullyLoaded = false;
+    private BaseShape[] shapeOfRecord;
+    private final Map<BaseShape, Integer> recordOfShape = new IdentityHashMap<>();
+    private final List<BaseShape> loadedShapes = new ArrayList<>();
+    private final List<BaseShape> evictedShapes = new ArrayList<>();
+
+    /**
+     * 可增長的整數陣列
+     */
+    private static final class IntList {
+        int[] data = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    private MappedDiagram(ByteBuffer mapped) throws IOException {
+        this.mapped = mapped;
+        ChannelDataInput input = new ChannelDataInput(mapped.duplicate());
+        this.idLimit = DiagramReader.maxIdFor(mapped.limit());
+        reader.limitIds(mapped.limit());
+        this.nextDepth = DiagramReader.readHeader(input);
+        scanRecords(input);
+        shapeOfRecord = new BaseShape[recordCount];
+    }
+
+    /**
+     * 映射圖檔並建立區塊索引
+     * @param path 檔案路徑
+     * @return 尚未載入任何形狀的圖檔
+     */
+    public static MappedDiagram open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("檔案過大，無法映射：" + channel.size() + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedDiagram(buffer);
+        }
+    }
+
+    @Override
+    public int getNextDepth() {
+        return nextDepth;
+    }
+
+    @Override
+    public boolean update(Rectangle visibleArea) {
+        if (fullyLoaded) {
+            return false;
+        }
+
+        Rectangle loadArea = new Rectangle(visibleArea);
+        loadArea.grow(PREFETCH_MARGIN, PREFETCH_MARGIN);
+        Rectangle keepArea = new Rectangle(visibleArea);
+        keepArea.grow(KEEP_MARGIN, KEEP_MARGIN);
+
+        BitSet toLoad = withDependencies(recordsIn(loadArea));
+        toLoad.andNot(loaded);
+
+        BitSet keep = recordsIn(keepArea);
+        keep.or(pinned);
+        keep = withDependencies(keep);
+        keep.or(toLoad);
+        BitSet toEvict = (BitSet) loaded.clone();
+        toEvict.andNot(keep);
+
+        if (toLoad.isEmpty() && toEvict.isEmpty()) {
+            return false;
+        }
+        evict(toEvict);
+        load(toLoad);
+        return true;
+    }
+
+    @Override
+    public void loadAll() {
+        BitSet toLoad = new BitSet();
+        toLoad.set(0, recordCount);
+        toLoad.andNot(loaded);
+        load(toLoad);
+        fullyLoaded = true;
+    }
+
+    @Override
+    public List<BaseShape> takeLoadedShapes() {
+        List<BaseShape> result = new ArrayList<>(loadedShapes);
+        loadedShapes.clear();
+        return result;
+    }
+
+    @Override
+    public List<BaseShape> takeEvictedShapes() {
+        List<BaseShape> result = new ArrayList<>(evictedShapes);
+        evictedShapes.clear();
+        return result;
+    }
+
+    @Override
+    public int orderOf(BaseShape shape) {
+        Integer record = recordOfShape.get(shape);
+        return record == null ? -1 : record;
+    }
+
+    @Override
+    public void pin(BaseShape shape) {
+        Integer record = recordOfShape.get(shape);
+        if (record != null) {
+            pinned.set(record);
+        }
+    }
+
+    /**
+     * 掃描所有頂層紀錄，記錄位置、邊界與形狀編號的參考關係
+     */
+    private void scanRecords(ChannelDataInput input) throws IOException {
+        byte tag;
+        int offset = input.position();
+        while ((tag = input.readByte()) != DiagramFormat.TAG_END) {
+            beginRecord(offset);
+            scanElement(tag, input, 0);
+            endRecord();
+            offset = input.position();
+        }
+    }
+
+    private void beginRecord(int offset) {
+        if (recordCount == offsets.length) {
+            int capacity = recordCount * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            minX = Arrays.copyOf(minX, capacity);
+            minY = Arrays.copyOf(minY, capacity);
+            maxX = Arrays.copyOf(maxX, capacity);
+            maxY = Arrays.copyOf(maxY, capacity);
+            definedStart = Arrays.copyOf(definedStart, capacity + 1);
+            referencedStart = Arrays.copyOf(referencedStart, capacity + 1);
+        }
+        offsets[recordCount] = offset;
+        minX[recordCount] = Integer.MAX_VALUE;
+        minY[recordCount] = Integer.MAX_VALUE;
+        maxX[recordCount] = Integer.MIN_VALUE;
+        maxY[recordCount] = Integer.MIN_VALUE;
+        definedStart[recordCount] = definedIds.size;
+        referencedStart[recordCount] = referencedIds.size;
+    }
+
+    private void endRecord() {
+        int record = recordCount++;
+        definedStart[recordCount] = definedIds.size;
+        referencedStart[recordCount] = referencedIds.size;
+        if (minX[record] > maxX[record]) {
+            return; // 空群組，沒有位置
+        }
+
+        for (int tx = Math.floorDiv(minX[record], TILE_SIZE); tx <= Math.floorDiv(maxX[record], TILE_SIZE); tx++) {
+            for (int ty = Math.floorDiv(minY[record], TILE_SIZE); ty <= Math.floorDiv(maxY[record], TILE_SIZE); ty++) {
+                tiles.computeIfAbsent(tileKey(tx, ty), k -> new IntList()).add(record);
+            }
+        }
+    }
+
+    /**
+     * 只讀取欄位計算邊界與編號，不建立物件
+     */
+    private void scanElement(byte tag, ChannelDataInput input, int nesting) throws IOException {
+        int record = recordCount;
+        switch (tag) {
+            case DiagramFormat.TAG_SHAPE: {
+                input.readByte(); // kind
+                int id = input.readInt();
+                input.readInt(); // depth
+                int x = input.readInt();
+                int y = input.readInt();
+                int width = input.readInt();
+                int height = input.readInt();
+                input.skip(input.readInt()); // name
+                input.skip(Byte.BYTES + Integer.BYTES + Short.BYTES); // 標籤樣式
+                if (id < 0 || id >= idLimit) {
+                    throw new IOException("形狀編號錯誤：" + id);
+                }
+                expand(record, x, y, x + width, y + height);
+                definedIds.add(id);
+                if (id >= ownerOfId.length) {
+                    int[] grown = newOwnerTable(Math.max(id + 1, ownerOfId.length * 2));
+                    System.arraycopy(ownerOfId, 0, grown, 0, ownerOfId.length);
+                    ownerOfId = grown;
+                }
+                ownerOfId[id] = record;
+                break;
+            }
+            case DiagramFormat.TAG_LINK: {
+                input.readByte(); // kind
+                input.readInt(); // depth
+                int startId = input.readInt();
+                input.readByte();
+                int endId = input.readInt();
+                input.readByte();
+                int startX = input.readInt();
+                int startY = input.readInt();
+                int endX = input.readInt();
+                int endY = input.readInt();
+                expand(record, Math.min(startX, endX), Math.min(startY, endY),
+                        Math.max(startX, endX), Math.max(startY, endY));
+                if (startId != DiagramFormat.NO_SHAPE) referencedIds.add(startId);
+                if (endId != DiagramFormat.NO_SHAPE) referencedIds.add(endId);
+                break;
+            }
+            case DiagramFormat.TAG_GROUP: {
+                if (nesting >= DiagramFormat.MAX_GROUP_NESTING) {
+                    throw new IOException("群組巢狀層數過深：" + nesting);
+                }
+                input.readInt(); // depth
+                int childCount = input.readInt();
+                for (int i = 0; i < childCount; i++) {
+                    scanElement(input.readByte(), input, nesting + 1);
+                }
+                break;
+            }
+            default:
+                throw new IOException("未知的紀錄類型：" + tag);
+        }
+    }
+
+    private void expand(int record, int x0, int y0, int x1, int y1) {
+        minX[record] = Math.min(minX[record], x0);
+        minY[record] = Math.min(minY[record], y0);
+        maxX[record] = Math.max(maxX[record], x1);
+        maxY[record] = Math.max(maxY[record], y1);
+    }
+
+    /**
+     * 找出與區域相交的紀錄
+     */
+    private BitSet recordsIn(Rectangle area) {
+        BitSet result = new BitSet();
+        int x1 = area.x + area.width;
+        int y1 = area.y + area.height;
+        for (int tx = Math.floorDiv(area.x, TILE_SIZE); tx <= Math.floorDiv(x1, TILE_SIZE); tx++) {
+            for (int ty = Math.floorDiv(area.y, TILE_SIZE); ty <= Math.floorDiv(y1, TILE_SIZE); ty++) {
+                IntList tile = tiles.get(tileKey(tx, ty));
+                if (tile == null) continue;
+                for (int i = 0; i < tile.size; i++) {
+                    int record = tile.data[i];
+                    if (minX[record] <= x1 && maxX[record] >= area.x && minY[record] <= y1 && maxY[record] >= area.y) {
+                        result.set(record);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 加入連結端點所在的紀錄（遞移）
+     */
+    private BitSet withDependencies(BitSet records) {
+        BitSet result = (BitSet) records.clone();
+        IntList queue = new IntList();
+        for (int r = records.nextSetBit(0); r >= 0; r = records.nextSetBit(r + 1)) {
+            queue.add(r);
+        }
+        for (int i = 0; i < queue.size; i++) {
+            int record = queue.data[i];
+            for (int j = referencedStart[record]; j < referencedStart[record + 1]; j++) {
+                int id = referencedIds.data[j];
+                int owner = id >= 0 && id < ownerOfId.length ? ownerOfId[id] : -1;
+                if (owner >= 0 && !result.get(owner)) {
+                    result.set(owner);
+                    queue.add(owner);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 依紀錄順序解碼，讀完後再連接跨紀錄的連結
+     */
+    private void load(BitSet records) {
+        try {
+            for (int r = records.nextSetBit(0); r >= 0; r = records.nextSetBit(r + 1)) {
+                ChannelDataInput input = new ChannelDataInput(mapped.duplicate().position(offsets[r]));
+                BaseShape shape = reader.readRecord(input);
+                shapeOfRecord[r] = shape;
+                recordOfShape.put(shape, r);
+                loaded.set(r);
+                loadedShapes.add(shape);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("圖檔內容損毀：" + e.getMessage(), e);
+        }
+        reader.resolvePendingLinks();
+    }
+
+    /**
+     * 釋放紀錄的物件，連結會從端點形狀上移除
+     */
+    private void evict(BitSet records) {
+        for (int r = records.nextSetBit(0); r >= 0; r = records.nextSetBit(r + 1)) {
+            BaseShape shape = shapeOfRecord[r];
+            detachLinks(shape);
+            for (int j = definedStart[r]; j < definedStart[r + 1]; j++) {
+                reader.forget(definedIds.data[j]);
+            }
+            shapeOfRecord[r] = null;
+            recordOfShape.remove(shape);
+            loaded.clear(r);
+            evictedShapes.add(shape);
+        }
+    }
+
+    private void detachLinks(BaseShape shape) {
+        if (shape instanceof Link link) {
+            link.detach();
+        } else if (shape instanceof CompositeShape group) {
+            for (BaseShape child : group.getShapes()) {
+                detachLinks(child);
+            }
+        }
+    }
+
+    private static int[] newOwnerTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, -1);
+        return table;
+    }
+
+    private static long tileKey(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+    }
+}
@@ -26,7 +26,7 @@ public class AssociationLink extends Link {
 
         // 使用模板方法繪製連結
         drawLine(g2d);
-        drawArrowHead(g2d);
+        drawArrowHeadIfVisible(g2d);
     }
 
     /**
@@ -37,6 +37,15 @@ public class AssociationLink extends Link {
     @Override
     protected void drawArrowHead(Graphics2D g2d) {
         // 繪製簡單的實心三角形箭頭
-        drawArrow(g2d, endPoint, startPoint, 10);
+        drawArrow(g2d, getEndPoint(), getStartPoint(), ARROW_SIZE);
+    }
+
+    /**
+     * 取得實心三角形箭頭的多邊形
+     * @return 箭頭多邊形
+     */
+    @Override
+    public Polygon getArrowHead() {
+        return createArrow(getEndPoint(), getStartPoint(), ARROW_SIZE);
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package Shapes;
 
 import Interfaces.Shape;
+import java.awt.Rectangle;
 
 /**
  * 基本形狀Abstract Class
@@ -10,6 +11,8 @@ import Interfaces.Shape;
 public abstract class BaseShape implements Shape {
     protected boolean selected = false; // 是否被選中
     protected int depth = 0; // 深度值，用於繪製順序
+    protected static final int PAINT_MARGIN = 6; // 連接埠、選取控制點與箭頭超出邊界的範圍
+    private CompositeShape parent; // 所屬的群組，頂層形狀為 null
 
     /**
      * 設定選取狀態
@@ -46,4 +49,41 @@ public abstract class BaseShape implements Shape {
     public int getDepth() {
         return depth;
     }
+
+    /**
+     * 取得所屬的群組
+     * @return 直接包含此形狀的群組，頂層形狀回傳 null
+     */
+    public CompositeShape getParent() {
+        return parent;
+    }
+
+    /**
+     * 設定所屬的群組，由 CompositeShape 加入或釋放成員時呼叫
+     * @param parent 所屬的群組，可為 null
+     */
+    void setParent(CompositeShape parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 通知所屬群組邊界已改變
+     * 只把外層群組標記為需要重新計算，實際計算延後到下一次取得邊界時
+     */
+    protected void boundsChanged() {
+        if (parent != null) {
+            parent.childBoundsChanged();
+        }
+    }
+
+    /**
+     * 取得繪製範圍
+     * 包含連接埠、選取控制點等超出邊界的部分，用於局部重繪與裁切
+     * @return 繪製時可能影響到的矩形區域
+     */
+    public Rectangle getPaintBounds() {
+        Rectangle paintBounds = new Rectangle(getBounds());
+        paintBounds.grow(PAINT_MARGIN, PAINT_MARGIN);
+        return paintBounds;
+    }
 }
\ No newline at end of file
@@ -2,8 +2,15 @@ package Shapes;
 
 import Interfaces.Connectable;
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 基本形狀類
@@ -14,8 +21,16 @@ import java.util.List;
 public abstract class BasicShape extends BaseShape implements Connectable {
     protected Rectangle bounds; // 形狀的邊界
     protected String name = ""; // 形狀的名稱
-    protected LabelRenderer labelRenderer; // 標籤渲染器
-    protected List<Point> ports = new ArrayList<>(); // 連接埠列表
+    protected LabelRenderer labelRenderer; // 標籤渲染器，相同樣式的形狀共用同一個
+    private int[] portCoords = NO_PORTS; // 連接埠座標，依序為 x0, y0, x1, y1 ...
+    private int portCount; // 連接埠數量
+    private int portVersion; // 每次重新計算連接埠就遞增，連結依此判斷端點快取是否過期
+    private ConnectedLinks connectedLinks; // 連接到此形狀的連結，第一次連接時才建立
+    private static final int[] NO_PORTS = new int[0];
+    private static final int PORT_SIZE = 5; // 連接埠方塊的邊長
+    private static final Color DEFAULT_LABEL_COLOR = Color.LIGHT_GRAY; //標籤外筐顏色固定
+    private static final int DEFAULT_FONT_SIZE = 12;
+    private static final Map<Long, LabelRenderer> LABEL_RENDERERS = new ConcurrentHashMap<>(); // 共用的標籤樣式
 
     /**
      * 建構函數
@@ -23,7 +38,7 @@ public abstract class BasicShape extends BaseShape implements Connectable {
      */
     public BasicShape(Point start) {
         bounds = new Rectangle(start.x, start.y, 0, 0);
-        labelRenderer = new RectangleLabelRenderer(); // 預設使用矩形標籤
+        labelRenderer = labelRenderer(false, DEFAULT_LABEL_COLOR, DEFAULT_FONT_SIZE); // 預設使用矩形標籤
     }
 
     /**
@@ -67,43 +82,125 @@ public abstract class BasicShape extends BaseShape implements Connectable {
     /**
      * 取得最近的連接埠
      * @param p 參考點
-     * @return 最近的連接埠位置
+     * @return 最近的連接埠位置（新的 Point，不與形狀共用）
      */
     @Override
     public Point getNearestPort(Point p) {
-        if (ports.isEmpty()) return null;
-
-        Point nearest = ports.get(0);
-        double minDistance = calculateDistance(p, nearest);
-
-        for (Point port : ports) {
-            double dist = calculateDistance(p, port);
+        if (portCount == 0) return null;
+
+        int nearest = 0;
+        long minDistance = Long.MAX_VALUE;
+        for (int i = 0; i < portCount; i++) {
+            long dx = portCoords[2 * i] - p.x;
+            long dy = portCoords[2 * i + 1] - p.y;
+            long dist = dx * dx + dy * dy; // 只比較大小，不需要開根號
             if (dist < minDistance) {
                 minDistance = dist;
-                nearest = port;
+                nearest = i;
             }
         }
 
-        return nearest;
+        return new Point(portCoords[2 * nearest], portCoords[2 * nearest + 1]);
+    }
+
+    /**
+     * 取得所有連接埠
+     * 回傳的是唯讀檢視，取出的 Point 為當下座標的複本；拖曳等頻繁的路徑請改用 getPortX/getPortY
+     * @return 連接埠列表
+     */
+    @Override
+    public List<Point> getPorts() {
+        return new PortView();
+    }
+
+    @Override
+    public int getPortCount() {
+        return portCount;
+    }
+
+    @Override
+    public int getPortX(int index) {
+        return portCoords[2 * index];
+    }
+
+    @Override
+    public int getPortY(int index) {
+        return portCoords[2 * index + 1];
     }
 
     /**
-     * 計算兩點之間的距離
-     * @param p1 第一個點
-     * @param p2 第二個點
-     * @return 距離
+     * 設定連接埠數量，由 updatePorts() 在填入座標前呼叫
+     * @param count 連接埠數量
      */
-    private double calculateDistance(Point p1, Point p2) {
-        return Math.sqrt(Math.pow(p2.x - p1.x, 2) + Math.pow(p2.y - p1.y, 2));
+    protected void setPortCount(int count) {
+        if (count * 2 > portCoords.length) {
+            portCoords = Arrays.copyOf(portCoords, count * 2);
+        }
+        portCount = count;
+        portVersion = (portVersion + 1) & Integer.MAX_VALUE; // 保持非負，與連結的過期標記區隔
+        boundsChanged(); // 連接埠只在形狀位置或大小改變時重新計算
     }
 
     /**
-     * 取得所有連接埠
-     * @return 連接埠列表
+     * 通知所屬群組邊界已改變
+     * 連結的範圍由端點形狀決定，因此連接到此形狀的連結所在的群組也一併標記
      */
     @Override
-    public List<Point> getPorts() {
-        return ports;
+    protected void boundsChanged() {
+        super.boundsChanged();
+        if (connectedLinks != null) {
+            for (Link link : connectedLinks) {
+                link.boundsChanged();
+            }
+        }
+    }
+
+    /**
+     * 取得連接埠版本
+     * @return 連接埠最後一次重新計算的版本
+     */
+    int getPortVersion() {
+        return portVersion;
+    }
+
+    /**
+     * 直接覆寫連接埠座標，不配置新的物件
+     * @param index 連接埠索引
+     * @param x x座標
+     * @param y y座標
+     */
+    protected void setPort(int index, int x, int y) {
+        portCoords[2 * index] = x;
+        portCoords[2 * index + 1] = y;
+    }
+
+    /**
+     * 取得連接到此形狀的所有連結
+     * @return 唯讀的連結集合
+     */
+    public Set<Link> getConnectedLinks() {
+        return connectedLinks == null ? Collections.emptySet() : Collections.unmodifiableSet(connectedLinks);
+    }
+
+    /**
+     * 記錄連接到此形狀的連結，由 Link 設定端點時呼叫
+     * @param link 連結
+     */
+    void attachLink(Link link) {
+        if (connectedLinks == null) {
+            connectedLinks = new ConnectedLinks();
+        }
+        connectedLinks.add(link);
+    }
+
+    /**
+     * 移除連接到此形狀的連結
+     * @param link 連結
+     */
+    void detachLink(Link link) {
+        if (connectedLinks != null) {
+            connectedLinks.remove(link);
+        }
     }
 
     // Getter 和 Setter 方法
@@ -116,31 +213,65 @@ public abstract class BasicShape extends BaseShape implements Connectable {
     }
 
     public void setLabelShape(String shape) {
-        if ("oval".equals(shape)) {
-            labelRenderer = new OvalLabelRenderer();
-        } else {
-            labelRenderer = new RectangleLabelRenderer();
-        }
+        labelRenderer = labelRenderer("oval".equals(shape), DEFAULT_LABEL_COLOR, DEFAULT_FONT_SIZE);
+    }
+
+    public String getLabelShape() {
+        return labelRenderer instanceof OvalLabelRenderer ? "oval" : "rect";
     }
 
     public void setLabelColor(Color color) {
-        labelRenderer.setColor(color);
+        labelRenderer = labelRenderer(labelRenderer instanceof OvalLabelRenderer, color, labelRenderer.getFontSize());
+    }
+
+    public Color getLabelColor() {
+        return labelRenderer.getColor();
     }
 
     public void setFontSize(int fontSize) {
-        labelRenderer.setFontSize(fontSize);
+        labelRenderer = labelRenderer(labelRenderer instanceof OvalLabelRenderer, labelRenderer.getColor(), fontSize);
     }
 
+    public int getFontSize() {
+        return labelRenderer.getFontSize();
+    }
+
+    @Override
     public Rectangle getBounds() {
         return bounds;
     }
 
+    /**
+     * 取得繪製範圍，標籤可能比形狀本身寬
+     * @return 繪製時可能影響到的矩形區域
+     */
+    @Override
+    public Rectangle getPaintBounds() {
+        Rectangle paintBounds = super.getPaintBounds();
+        if (!name.isEmpty()) {
+            paintBounds.add(labelRenderer.getLabelBounds(name, bounds));
+        }
+        return paintBounds;
+    }
+
+    /**
+     * 取得標籤外框（與繪製時的外框相同）
+     * 供向量匯出等不經過 Graphics2D 的輸出使用
+     * @return 標籤外框，沒有名稱時回傳 null
+     */
+    public Rectangle getLabelFrame() {
+        if (name.isEmpty()) {
+            return null;
+        }
+        return LabelLayout.of(name, labelRenderer.getFontSize()).frame(bounds);
+    }
+
     /**
      * 繪製標籤
      * @param g2d
      */
     protected void drawLabel(Graphics2D g2d) {
-        if (!name.isEmpty()) {
+        if (!name.isEmpty() && LevelOfDetail.isVisible(g2d, labelRenderer.getFontSize())) {
             labelRenderer.renderLabel(g2d, name, bounds);
         }
     }
@@ -150,91 +281,222 @@ public abstract class BasicShape extends BaseShape implements Connectable {
      * @param g2d
      */
     protected void drawPorts(Graphics2D g2d) {
-        if (!selected) return;
+        if (!selected || !LevelOfDetail.isVisible(g2d, PORT_SIZE)) return;
 
         g2d.setColor(Color.BLACK);
-        for (Point port : ports) {
-            g2d.fillRect(port.x - 2, port.y - 2, 5, 5);
+        for (int i = 0; i < portCount; i++) {
+            g2d.fillRect(portCoords[2 * i] - 2, portCoords[2 * i + 1] - 2, PORT_SIZE, PORT_SIZE);
+        }
+    }
+
+    /**
+     * 連接埠的唯讀列表檢視
+     * 座標存放在 portCoords，只有透過列表取用時才建立 Point
+     */
+    private class PortView extends AbstractList<Point> implements java.util.RandomAccess {
+        @Override
+        public Point get(int index) {
+            Objects.checkIndex(index, portCount);
+            return new Point(portCoords[2 * index], portCoords[2 * index + 1]);
+        }
+
+        @Override
+        public int size() {
+            return portCount;
         }
     }
 
+    /**
+     * 取得共用的標籤渲染器
+     * 渲染器建立後不再修改，相同外框、顏色與字體大小的形狀共用同一個，百萬個形狀也只有少數幾個渲染器
+     * @param oval 是否為橢圓外框
+     * @param color 外框顏色
+     * @param fontSize 字體大小
+     */
+    private static LabelRenderer labelRenderer(boolean oval, Color color, int fontSize) {
+        long key = ((long) color.getRGB() << 32) | ((long) fontSize << 1 & 0xFFFFFFFFL) | (oval ? 1 : 0);
+        return LABEL_RENDERERS.computeIfAbsent(key, k -> oval
+                ? new OvalLabelRenderer(color, fontSize)
+                : new RectangleLabelRenderer(color, fontSize));
+    }
+
     /**
      * 標籤渲染器 interface
-     * 使用策略模式處理不同的標籤樣式
+     * 使用策略模式處理不同的標籤樣式；實作不可變，改變樣式時改用另一個共用的渲染器
      */
     private interface LabelRenderer {
         void renderLabel(Graphics2D g2d, String text, Rectangle bounds);
-        void setColor(Color color);
-        void setFontSize(int fontSize);
+        Rectangle getLabelBounds(String text, Rectangle bounds);
+        Color getColor();
+        int getFontSize();
+    }
+
+    /**
+     * 標籤版面
+     * 依 (字體大小, 文字) 快取字型與量測結果，重繪時不需要建立字型或量測文字
+     * 量測使用與螢幕無關的 Graphics，因此繪製出的外框與局部重繪使用的繪製範圍完全一致
+     * 快取可同時被多個執行緒使用（批次渲染）
+     */
+    private static final class LabelLayout {
+        private static final int MAX_ENTRIES_PER_SIZE = 4096; // 超過時淘汰該字體大小最久未使用的版面
+        private static final ThreadLocal<Graphics2D> MEASURE_GRAPHICS = ThreadLocal.withInitial(() ->
+                new java.awt.image.BufferedImage(1, 1, java.awt.image.BufferedImage.TYPE_INT_ARGB).createGraphics());
+        private static final Map<Integer, Font> FONTS = new ConcurrentHashMap<>(); // 字體大小 -> 字型
+        private static final Map<Integer, Map<String, LabelLayout>> CACHE = new ConcurrentHashMap<>();
+
+        final Font font;
+        final int textWidth;
+        final int textHeight;
+        final int ascent;
+
+        private LabelLayout(Font font, FontMetrics metrics, String text) {
+            this.font = font;
+            this.textWidth = metrics.stringWidth(text);
+            this.textHeight = metrics.getHeight();
+            this.ascent = metrics.getAscent();
+        }
+
+        /**
+         * 取得文字的版面，第一次使用時才量測
+         */
+        static LabelLayout of(String text, int fontSize) {
+            Map<String, LabelLayout> layouts = CACHE.computeIfAbsent(fontSize, size -> new RecentLayouts());
+            LabelLayout layout;
+            synchronized (layouts) {
+                layout = layouts.get(text);
+            }
+            if (layout == null) {
+                // 量測在鎖外進行，其他執行緒同時量測同一段文字時以先放入的為準
+                Font font = FONTS.computeIfAbsent(fontSize, size -> new Font("Arial", Font.PLAIN, size));
+                layout = new LabelLayout(font, MEASURE_GRAPHICS.get().getFontMetrics(font), text);
+                synchronized (layouts) {
+                    LabelLayout existing = layouts.putIfAbsent(text, layout);
+                    if (existing != null) {
+                        layout = existing;
+                    }
+                }
+            }
+            return layout;
+        }
+
+        /**
+         * 單一字體大小的版面快取，依存取順序排列，超過上限時淘汰最久未使用的文字
+         * 讀取也會改變順序，存取時必須鎖住此物件
+         */
+        private static final class RecentLayouts extends LinkedHashMap<String, LabelLayout> {
+            RecentLayouts() {
+                super(16, 0.75f, true);
+            }
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, LabelLayout> eldest) {
+                return size() > MAX_ENTRIES_PER_SIZE;
+            }
+        }
+
+        /**
+         * 計算置中標籤的外框
+         */
+        Rectangle frame(Rectangle bounds) {
+            int x = bounds.x + (bounds.width - textWidth) / 2;
+            int y = bounds.y + (bounds.height - textHeight) / 2;
+            return new Rectangle(x - 5, y, textWidth + 10, textHeight);
+        }
+
+        /**
+         * 計算標籤繪製時影響的範圍，外框線條會多佔一個像素
+         */
+        Rectangle measure(Rectangle bounds) {
+            Rectangle area = frame(bounds);
+            area.width += 1;
+            area.height += 1;
+            return area;
+        }
     }
 
     /**
      * 實作矩形標籤
      */
-    private static class RectangleLabelRenderer implements LabelRenderer {
-        private Color color = Color.LIGHT_GRAY; //標籤外筐顏色固定
-        private int fontSize = 12;
+    private static final class RectangleLabelRenderer implements LabelRenderer {
+        private final Color color;
+        private final int fontSize;
+
+        RectangleLabelRenderer(Color color, int fontSize) {
+            this.color = color;
+            this.fontSize = fontSize;
+        }
 
         @Override
         public void renderLabel(Graphics2D g2d, String text, Rectangle bounds) {
-            g2d.setFont(new Font("Arial", Font.PLAIN, fontSize));
-            FontMetrics metrics = g2d.getFontMetrics();
-            int textWidth = metrics.stringWidth(text);
-            int textHeight = metrics.getHeight();
+            LabelLayout layout = LabelLayout.of(text, fontSize);
+            g2d.setFont(layout.font);
 
-            int x = bounds.x + (bounds.width - textWidth) / 2;
-            int y = bounds.y + (bounds.height - textHeight) / 2 + metrics.getAscent();
+            int x = bounds.x + (bounds.width - layout.textWidth) / 2;
+            int y = bounds.y + (bounds.height - layout.textHeight) / 2 + layout.ascent;
 
             g2d.setColor(color);
-            g2d.fillRect(x - 5, y - metrics.getAscent(), textWidth + 10, textHeight);
+            g2d.fillRect(x - 5, y - layout.ascent, layout.textWidth + 10, layout.textHeight);
             g2d.setColor(Color.BLACK);
-            g2d.drawRect(x - 5, y - metrics.getAscent(), textWidth + 10, textHeight);
+            g2d.drawRect(x - 5, y - layout.ascent, layout.textWidth + 10, layout.textHeight);
             g2d.drawString(text, x, y);
         }
 
         @Override
-        public void setColor(Color color) {
-            this.color = color;
+        public Rectangle getLabelBounds(String text, Rectangle bounds) {
+            return LabelLayout.of(text, fontSize).measure(bounds);
         }
 
         @Override
-        public void setFontSize(int fontSize) {
-            this.fontSize = fontSize;
+        public Color getColor() {
+            return color;
+        }
+
+        @Override
+        public int getFontSize() {
+            return fontSize;
         }
     }
 
     /**
      * 橢圓標籤渲染器
      */
-    private static class OvalLabelRenderer implements LabelRenderer {
-        private Color color = Color.LIGHT_GRAY;
-        private int fontSize = 12;
+    private static final class OvalLabelRenderer implements LabelRenderer {
+        private final Color color;
+        private final int fontSize;
+
+        OvalLabelRenderer(Color color, int fontSize) {
+            this.color = color;
+            this.fontSize = fontSize;
+        }
 
         @Override
         public void renderLabel(Graphics2D g2d, String text, Rectangle bounds) {
-            g2d.setFont(new Font("Arial", Font.PLAIN, fontSize));
-            FontMetrics metrics = g2d.getFontMetrics();
-            int textWidth = metrics.stringWidth(text);
-            int textHeight = metrics.getHeight();
+            LabelLayout layout = LabelLayout.of(text, fontSize);
+            g2d.setFont(layout.font);
 
-            int x = bounds.x + (bounds.width - textWidth) / 2;
-            int y = bounds.y + (bounds.height - textHeight) / 2 + metrics.getAscent();
+            int x = bounds.x + (bounds.width - layout.textWidth) / 2;
+            int y = bounds.y + (bounds.height - layout.textHeight) / 2 + layout.ascent;
 
             g2d.setColor(color);
-            g2d.fillOval(x - 5, y - metrics.getAscent(), textWidth + 10, textHeight);
+            g2d.fillOval(x - 5, y - layout.ascent, layout.textWidth + 10, layout.textHeight);
             g2d.setColor(Color.BLACK);
-            g2d.drawOval(x - 5, y - metrics.getAscent(), textWidth + 10, textHeight);
+            g2d.drawOval(x - 5, y - layout.ascent, layout.textWidth + 10, layout.textHeight);
             g2d.drawString(text, x, y);
         }
 
         @Override
-        public void setColor(Color color) {
-            this.color = color;
+        public Rectangle getLabelBounds(String text, Rectangle bounds) {
+            return LabelLayout.of(text, fontSize).measure(bounds);
         }
 
         @Override
-        public void setFontSize(int fontSize) {
-            this.fontSize = fontSize;
+        public Color getColor() {
+            return color;
+        }
+
+        @Override
+        public int getFontSize() {
+            return fontSize;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package Shapes;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 群組成員的階層包圍盒（BVH）
+ * 依成員的點選範圍遞迴對半分割，點選查詢只需走訪包含游標的節點，成本約為成員數的對數
+ *
+ * 節點以前序排列在整數陣列中，左子節點緊接在父節點之後；
+ * 成員只移動而數量不變時以 refit() 由下往上重新計算節點範圍，不需要重新分割
+ */
+final class BoundsHierarchy {
+    private static final int LEAF_SIZE = 4; // 葉節點最多容納的成員數
+    private static final int MIN_X = 0, MIN_Y = 1, MAX_X = 2, MAX_Y = 3;
+
+    private final List<BaseShape> members;
+    private final int[] order; // 依節點分割後的成員索引
+    private final int[] memberBoxes; // 每個成員的點選範圍：minX, minY, maxX, maxY
+    private final int[] nodeBoxes; // 每個節點的範圍：minX, minY, maxX, maxY
+    private final int[] nodeStart; // 節點在 order 中的起點
+    private final int[] nodeCount; // 節點包含的成員數
+    private final int[] nodeRight; // 內部節點的右子節點，葉節點為 0（根節點不會是右子節點）
+    private int nodeTotal;
+
+    /**
+     * 建立階層包圍盒
+     * @param members 群組的直接成員（列表之後不可增減，成員可以移動）
+     */
+    BoundsHierarchy(List<BaseShape> members) {
+        this.members = members;
+        int size = members.size();
+        this.order = new int[size];
+        this.memberBoxes = new int[size * 4];
+        int capacity = Math.max(1, size); // 分割後每個葉節點至少有兩個成員，節點數少於成員數
+        this.nodeBoxes = new int[capacity * 4];
+        this.nodeStart = new int[capacity];
+        this.nodeCount = new int[capacity];
+        this.nodeRight = new int[capacity];
+
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            measure(i);
+        }
+        build(0, size);
+        fitNodes();
+    }
+
+    /**
+     * 成員移動或改變大小後重新計算所有範圍，保留原本的分割
+     */
+    void refit() {
+        for (int i = 0; i < members.size(); i++) {
+            measure(i);
+        }
+        fitNodes();
+    }
+
+    /**
+     * 檢查點是否落在任一成員內
+     * @param p 要檢查的點
+     * @return 是否有成員包含此點
+     */
+    boolean contains(Point p) {
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (!boxContains(nodeBoxes, node, p)) {
+                continue;
+            }
+            if (nodeRight[node] == 0) {
+                for (int i = nodeStart[node]; i < nodeStart[node] + nodeCount[node]; i++) {
+                    int member = order[i];
+                    if (boxContains(memberBoxes, member, p) && members.get(member).contains(p)) {
+                        return true;
+                    }
+                }
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = nodeRight[node];
+                stack[top++] = node + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 記錄成員的點選範圍
+     * 基本形狀與群組只在邊界內才可能被點到；連結還需加上與線段的距離容差
+     */
+    private void measure(int member) {
+        BaseShape shape = members.get(member);
+        Rectangle bounds = shape.getBounds();
+        int margin = shape instanceof Link link ? link.Distance_GAP : 0;
+        memberBoxes[member * 4 + MIN_X] = bounds.x - margin;
+        memberBoxes[member * 4 + MIN_Y] = bounds.y - margin;
+        memberBoxes[member * 4 + MAX_X] = bounds.x + bounds.width + margin;
+        memberBoxes[member * 4 + MAX_Y] = bounds.y + bounds.height + margin;
+    }
+
+    /**
+     * 以前序建立 order[from, to) 的節點，沿範圍較長的軸以中位數分割
+     * @return 建立的節點索引
+     */
+    private int build(int from, int to) {
+        int node = nodeTotal++;
+        nodeStart[node] = from;
+        nodeCount[node] = to - from;
+        if (to - from <= LEAF_SIZE) {
+            return node;
+        }
+
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int centerX = centerX(order[i]), centerY = centerY(order[i]);
+            minX = Math.min(minX, centerX);
+            maxX = Math.max(maxX, centerX);
+            minY = Math.min(minY, centerY);
+            maxY = Math.max(maxY, centerY);
+        }
+        boolean splitX = (long) maxX - minX >= (long) maxY - minY;
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, splitX);
+
+        build(from, middle);
+        nodeRight[node] = build(middle, to);
+        return node;
+    }
+
+    /**
+     * 部分排序 order[left, right]，使 order[k] 左邊的中心座標都不大於右邊
+     */
+    private void select(int left, int right, int k, boolean byX) {
+        while (left < right) {
+            int pivot = key(order[(left + right) >>> 1], byX);
+            int i = left, j = right;
+            while (i <= j) {
+                while (key(order[i], byX) < pivot) i++;
+                while (key(order[j], byX) > pivot) j--;
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 由後往前計算節點範圍：前序排列下子節點一定在父節點之後
+     */
+    private void fitNodes() {
+        for (int node = nodeTotal - 1; node >= 0; node--) {
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            if (nodeRight[node] == 0) {
+                for (int i = nodeStart[node]; i < nodeStart[node] + nodeCount[node]; i++) {
+                    int box = order[i] * 4;
+                    minX = Math.min(minX, memberBoxes[box + MIN_X]);
+                    minY = Math.min(minY, memberBoxes[box + MIN_Y]);
+                    maxX = Math.max(maxX, memberBoxes[box + MAX_X]);
+                    maxY = Math.max(maxY, memberBoxes[box + MAX_Y]);
+                }
+            } else {
+                int left = (node + 1) * 4, right = nodeRight[node] * 4;
+                minX = Math.min(nodeBoxes[left + MIN_X], nodeBoxes[right + MIN_X]);
+                minY = Math.min(nodeBoxes[left + MIN_Y], nodeBoxes[right + MIN_Y]);
+                maxX = Math.max(nodeBoxes[left + MAX_X], nodeBoxes[right + MAX_X]);
+                maxY = Math.max(nodeBoxes[left + MAX_Y], nodeBoxes[right + MAX_Y]);
+            }
+            nodeBoxes[node * 4 + MIN_X] = minX;
+            nodeBoxes[node * 4 + MIN_Y] = minY;
+            nodeBoxes[node * 4 + MAX_X] = maxX;
+            nodeBoxes[node * 4 + MAX_Y] = maxY;
+        }
+    }
+
+    private static boolean boxContains(int[] boxes, int index, Point p) {
+        int box = index * 4;
+        return p.x >= boxes[box + MIN_X] && p.x <= boxes[box + MAX_X]
+                && p.y >= boxes[box + MIN_Y] && p.y <= boxes[box + MAX_Y];
+    }
+
+    private int key(int member, boolean byX) {
+        return byX ? centerX(member) : centerY(member);
+    }
+
+    private int centerX(int member) {
+        return (int) (((long) memberBoxes[member * 4 + MIN_X] + memberBoxes[member * 4 + MAX_X]) >> 1);
+    }
+
+    private int centerY(int member) {
+        return (int) (((long) memberBoxes[member * 4 + MIN_Y] + memberBoxes[member * 4 + MAX_Y]) >> 1);
+    }
+}
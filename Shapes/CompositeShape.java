@@ -3,7 +3,10 @@ package Shapes;
 import Interfaces.Shape;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 複合形狀類
@@ -12,15 +15,20 @@ import java.util.List;
  */
 public class CompositeShape extends BaseShape {
     private List<BaseShape> shapes = new ArrayList<>();
+    private final List<BaseShape> shapesView = Collections.unmodifiableList(shapes);
+    private volatile Leaves leaves; // 展開後的葉節點快取，此群組或巢狀群組的成員變動時清除
     private Rectangle bounds = new Rectangle();
-    private BoundsCalculator boundsCalculator;
-    private int GAP_Value = 5;
+    private boolean boundsDirty; // 成員的邊界改變後為 true，下一次取得邊界時重新計算
+    private static final int HIERARCHY_THRESHOLD = 32; // 成員少於此數時直接逐一檢查
+    private BoundsHierarchy hierarchy; // 點選用的階層包圍盒，成員變動時捨棄並重建
+    private boolean hierarchyStale; // 成員移動過，下一次點選前需重新計算包圍盒範圍
+    private static final BoundsCalculator BOUNDS_CALCULATOR = new StandardBoundsCalculator(); // 沒有狀態，所有群組共用
+    private static final int GAP_Value = 5;
 
     /**
      * 建構函數
      */
     public CompositeShape() {
-        this.boundsCalculator = new StandardBoundsCalculator();
     }
 
     /**
@@ -46,7 +54,7 @@ public class CompositeShape extends BaseShape {
      */
     private void drawSelectionBorder(Graphics2D g2d) {
         SelectionBorderRenderer renderer = new SelectionBorderRenderer();
-        renderer.renderBorder(g2d, bounds);
+        renderer.renderBorder(g2d, getBounds());
     }
 
     /**
@@ -57,15 +65,13 @@ public class CompositeShape extends BaseShape {
     @Override
     public boolean contains(Point p) {
         // 首先檢查是否在整個群組的邊界內
-        if (!bounds.contains(p)) {
+        if (!getBounds().contains(p)) {
             return false;
         }
 
         // 然後檢查是否在任何子形狀內
-        for (BaseShape shape : shapes) {
-            if (shape.contains(p)) {
-                return true;
-            }
+        if (memberContains(p)) {
+            return true;
         }
 
         // 如果不在任何子形狀內，但在群組邊界內，
@@ -73,12 +79,35 @@ public class CompositeShape extends BaseShape {
         return isOnGroupBorder(p);
     }
 
+    /**
+     * 檢查點是否在任何子形狀內
+     * 成員多時透過階層包圍盒只檢查範圍包含此點的成員
+     */
+    private boolean memberContains(Point p) {
+        if (shapes.size() < HIERARCHY_THRESHOLD) {
+            for (BaseShape shape : shapes) {
+                if (shape.contains(p)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (hierarchy == null) {
+            hierarchy = new BoundsHierarchy(shapesView);
+        } else if (hierarchyStale) {
+            hierarchy.refit();
+        }
+        hierarchyStale = false;
+        return hierarchy.contains(p);
+    }
+
     /**
      * 檢查點是否在群組邊框上
      * 用於選取整個群組
      */
     private boolean isOnGroupBorder(Point p) {
         int borderWidth = GAP_Value; // 邊框寬度容差
+        Rectangle bounds = getBounds();
 
         // 檢查是否在上下邊框附近
         if ((Math.abs(p.y - bounds.y) <= borderWidth ||
@@ -108,25 +137,8 @@ public class CompositeShape extends BaseShape {
         for (BaseShape shape : shapes) {
             shape.move(dx, dy);
         }
-
-        // 更新連結線位置，確保兩個形狀之間的連結線跟著移動
-        updateChildLinks();
-
-        // 更新邊界
-        bounds.x += dx;
-        bounds.y += dy;
-    }
-
-    /**
-     * 更新子連結
-     */
-    private void updateChildLinks() {
-        for (BaseShape shape : shapes) {
-            if (shape instanceof Link) {
-                Link link = (Link) shape;
-                link.updatePosition();
-            }
-        }
+        // 群組內的連結端點由連接埠推得，形狀移動後自然跟著移動
+        // 子形狀移動時已將此群組標記為需要重新計算邊界；連結另一端可能在群組外，不能只平移邊界
     }
 
     /**
@@ -146,42 +158,138 @@ public class CompositeShape extends BaseShape {
     public void addShape(BaseShape shape) {
         if (shape != this && !shapes.contains(shape)) { // 防止自我包含和重複添加
             shapes.add(shape);
-            updateBounds();
+            shape.setParent(this);
+            leavesChanged();
+            hierarchy = null;
+            childBoundsChanged();
+        }
+    }
+
+    /**
+     * 解除群組時釋放成員，成員不再屬於此群組
+     * 群組本身仍保留成員列表，以便復原時直接放回
+     * @param deep 是否一併釋放巢狀群組的成員（深度解除群組）
+     */
+    public void releaseMembers(boolean deep) {
+        for (BaseShape shape : shapes) {
+            if (shape.getParent() == this) {
+                shape.setParent(null);
+            }
+            if (deep && shape instanceof CompositeShape nested) {
+                nested.releaseMembers(true);
+            }
+        }
+    }
+
+    /**
+     * 復原群組時重新收回所有成員（包含巢狀群組的成員）
+     */
+    public void restoreMembers() {
+        for (BaseShape shape : shapes) {
+            shape.setParent(this);
+            if (shape instanceof CompositeShape nested) {
+                nested.restoreMembers();
+            }
+        }
+        leavesChanged(); // 釋放期間巢狀群組的變動不會傳到此群組
+        childBoundsChanged();
+    }
+
+    /**
+     * 清除此群組與所有外層群組的葉節點快取
+     * 其他群組的快取不受影響
+     */
+    private void leavesChanged() {
+        for (CompositeShape group = this; group != null; group = group.getParent()) {
+            group.leaves = null;
+        }
+    }
+
+    /**
+     * 成員的邊界改變時呼叫
+     * 已標記過的群組不再往上傳遞：群組被標記時外層群組一定也已被標記，
+     * 而外層群組重新計算邊界時會先取得此群組的邊界，使兩者一起回到最新狀態
+     */
+    void childBoundsChanged() {
+        hierarchyStale = true;
+        if (!boundsDirty) {
+            boundsDirty = true;
+            boundsChanged();
         }
     }
 
     /**
      * 取得群組中的所有形狀
-     * @return 形狀列表的副本
+     * @return 直接子形狀的唯讀檢視，不複製
      */
     public List<BaseShape> getShapes() {
-        return new ArrayList<>(shapes);
+        return shapesView;
     }
 
+    /**
+     * 取得展開所有巢狀群組後的葉節點（基本形狀與連結）
+     * 順序與深度優先走訪子形狀相同；結果會被快取，直到此群組或巢狀群組的成員變動
+     * @return 葉節點的唯讀列表
+     */
+    public List<BaseShape> getLeafShapes() {
+        return currentLeaves().list;
+    }
 
     /**
-     * 獲取形狀數量
-     * @return 形狀數量
+     * 檢查形狀是否為群組（含巢狀群組）內的葉節點
+     * @param shape 要檢查的形狀
+     * @return 是否為群組內的基本形狀或連結
      */
-    public int getShapeCount() {
-        return shapes.size();
+    public boolean containsLeaf(BaseShape shape) {
+        return currentLeaves().set.contains(shape);
+    }
+
+    private Leaves currentLeaves() {
+        Leaves current = leaves;
+        if (current == null) {
+            current = new Leaves(this);
+            leaves = current;
+        }
+        return current;
     }
 
+
     /**
-     * 更新邊界
+     * 獲取形狀數量
+     * @return 形狀數量
      */
-    private void updateBounds() {
-        bounds = boundsCalculator.calculateBounds(shapes);
+    public int getShapeCount() {
+        return shapes.size();
     }
 
     /**
      * 取得邊界
+     * 成員改變過邊界時才重新計算
      * @return 邊界矩形
      */
+    @Override
     public Rectangle getBounds() {
+        if (boundsDirty) {
+            bounds = BOUNDS_CALCULATOR.calculateBounds(shapes);
+            boundsDirty = false;
+        }
         return bounds;
     }
 
+    /**
+     * 取得繪製範圍
+     * 子形狀的標籤可能超出群組邊界，因此合併所有子形狀的繪製範圍
+     * @return 繪製時可能影響到的矩形區域
+     */
+    @Override
+    public Rectangle getPaintBounds() {
+        Rectangle paintBounds = super.getPaintBounds();
+        for (BaseShape shape : shapes) {
+            paintBounds.add(shape.getPaintBounds());
+        }
+        return paintBounds;
+    }
+
     /**
      * 設定選取狀態（同時設定所有子形狀）
      * @param selected 是否被選取
@@ -206,6 +314,34 @@ public class CompositeShape extends BaseShape {
         return checker.isGroupRelatedToLink(this, link);
     }
 
+    /**
+     * 展開後的葉節點快取
+     * 建立後不再修改，多個執行緒可同時讀取
+     */
+    private static final class Leaves {
+        final List<BaseShape> list;
+        final Set<BaseShape> set;
+
+        Leaves(CompositeShape group) {
+            List<BaseShape> collected = new ArrayList<>();
+            collect(group, collected);
+            this.list = Collections.unmodifiableList(collected);
+            Set<BaseShape> identitySet = Collections.newSetFromMap(new IdentityHashMap<>(collected.size() * 2));
+            identitySet.addAll(collected);
+            this.set = Collections.unmodifiableSet(identitySet);
+        }
+
+        private static void collect(CompositeShape group, List<BaseShape> collected) {
+            for (BaseShape shape : group.shapes) {
+                if (shape instanceof CompositeShape nested) {
+                    collect(nested, collected);
+                } else {
+                    collected.add(shape);
+                }
+            }
+        }
+    }
+
     /**
      * 邊界計算器interface
      * 處理不同的邊界計算方式
@@ -294,20 +430,8 @@ public class CompositeShape extends BaseShape {
      */
     private static class RelationshipChecker {
         public boolean isGroupRelatedToLink(CompositeShape group, Link link) {
-            for (BaseShape shape : group.shapes) {
-                if (shape instanceof BasicShape) {
-                    if (link.isRelatedTo(shape)) {
-                        return true;
-                    }
-                } else if (shape instanceof CompositeShape) {
-                    // 遞迴檢查子群組
-                    CompositeShape cs = (CompositeShape) shape;
-                    if (cs.isRelatedToLink(link)) {
-                        return true;
-                    }
-                }
-            }
-            return false;
+            // 只需檢查連結的兩端是否為群組內的基本形狀，不必走訪巢狀群組
+            return group.containsLeaf(link.getStartShape()) || group.containsLeaf(link.getEndShape());
         }
     }
 }
\ No newline at end of file
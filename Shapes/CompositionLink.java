@@ -27,7 +27,7 @@ public class CompositionLink extends Link {
 
         // 使用父類別方法繪製連結
         drawLine(g2d);
-        drawArrowHead(g2d);
+        drawArrowHeadIfVisible(g2d);
     }
 
     /**
@@ -39,7 +39,17 @@ public class CompositionLink extends Link {
     protected void drawArrowHead(Graphics2D g2d) {
         // 繪製實心菱形箭頭
         DiamondArrowRenderer renderer = new DiamondArrowRenderer();
-        renderer.renderSolidDiamond(g2d, endPoint, startPoint, 10);
+        renderer.renderSolidDiamond(g2d, getEndPoint(), getStartPoint(), ARROW_SIZE);
+    }
+
+    /**
+     * 取得實心菱形箭頭的多邊形
+     * @return 箭頭多邊形
+     */
+    @Override
+    public Polygon getArrowHead() {
+        DiamondArrowRenderer renderer = new DiamondArrowRenderer();
+        return renderer.createDiamond(getEndPoint(), getStartPoint(), ARROW_SIZE);
     }
 
     /**
@@ -56,11 +66,26 @@ public class CompositionLink extends Link {
          * @param size 箭頭大小
          */
         public void renderSolidDiamond(Graphics2D g2d, Point tip, Point tail, int size) {
+            Polygon diamond = createDiamond(tip, tail, size);
+            if (diamond != null) {
+                // 繪製實心菱形
+                g2d.fillPolygon(diamond);
+            }
+        }
+
+        /**
+         * 計算菱形箭頭的頂點
+         * @param tip 箭頭尖端
+         * @param tail 箭頭尾部
+         * @param size 箭頭大小
+         * @return 菱形，尖端與尾部重疊時回傳 null
+         */
+        public Polygon createDiamond(Point tip, Point tail, int size) {
             double dx = tip.x - tail.x;
             double dy = tip.y - tail.y;
             double length = Math.sqrt(dx * dx + dy * dy);
 
-            if (length == 0) return;
+            if (length == 0) return null;
 
             double unitDx = dx / length;
             double unitDy = dy / length;
@@ -76,8 +101,7 @@ public class CompositionLink extends Link {
             int[] xPoints = {tip.x, x1, x2, x3};
             int[] yPoints = {tip.y, y1, y2, y3};
 
-            // 繪製實心菱形
-            g2d.fillPolygon(xPoints, yPoints, 4);
+            return new Polygon(xPoints, yPoints, 4);
         }
     }
 }
\ No newline at end of file
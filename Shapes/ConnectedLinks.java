@@ -0,0 +1,103 @@
+package Shapes;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 連接到一個形狀的連結集合
+ * 大多數形狀只有少數幾條連結，少量時以陣列存放並線性比對，超過門檻才改用 LinkedHashSet；
+ * 兩種存放方式都保持加入順序，與原本的 LinkedHashSet 走訪順序相同
+ */
+final class ConnectedLinks extends AbstractSet<Link> {
+    private static final int ARRAY_LIMIT = 8; // 超過此數量改用雜湊集合
+
+    private Link[] links = new Link[2];
+    private int size;
+    private Set<Link> large; // 連結數量多時使用，此時 links 不再使用
+
+    @Override
+    public boolean add(Link link) {
+        if (large != null) {
+            return large.add(link);
+        }
+        if (indexOf(link) >= 0) {
+            return false;
+        }
+        if (size == ARRAY_LIMIT) {
+            large = new LinkedHashSet<>(Arrays.asList(links).subList(0, size));
+            links = null;
+            size = 0;
+            return large.add(link);
+        }
+        if (size == links.length) {
+            links = Arrays.copyOf(links, Math.min(ARRAY_LIMIT, size * 2));
+        }
+        links[size++] = link;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object link) {
+        if (large != null) {
+            return large.remove(link);
+        }
+        int index = indexOf(link);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(links, index + 1, links, index, size - index - 1);
+        links[--size] = null;
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object link) {
+        return large != null ? large.contains(link) : indexOf(link) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return large != null ? large.size() : size;
+    }
+
+    @Override
+    public Iterator<Link> iterator() {
+        if (large != null) {
+            return large.iterator();
+        }
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Link next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return links[next++];
+            }
+
+            @Override
+            public void remove() {
+                ConnectedLinks.this.remove(links[--next]);
+            }
+        };
+    }
+
+    private int indexOf(Object link) {
+        for (int i = 0; i < size; i++) {
+            if (links[i] == link) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -26,7 +26,7 @@ public class GeneralizationLink extends Link {
 
         // 使用父節點繪製連結
         drawLine(g2d);
-        drawArrowHead(g2d);
+        drawArrowHeadIfVisible(g2d);
     }
 
     /**
@@ -38,7 +38,17 @@ public class GeneralizationLink extends Link {
     protected void drawArrowHead(Graphics2D g2d) {
         // 繪製空心三角形箭頭
         TriangleArrowRenderer renderer = new TriangleArrowRenderer();
-        renderer.renderHollowTriangle(g2d, endPoint, startPoint, 10);
+        renderer.renderHollowTriangle(g2d, getEndPoint(), getStartPoint(), ARROW_SIZE);
+    }
+
+    /**
+     * 取得空心三角形箭頭的多邊形
+     * @return 箭頭多邊形
+     */
+    @Override
+    public Polygon getArrowHead() {
+        TriangleArrowRenderer renderer = new TriangleArrowRenderer();
+        return renderer.createTriangle(getEndPoint(), getStartPoint(), ARROW_SIZE);
     }
 
     /**
@@ -55,11 +65,29 @@ public class GeneralizationLink extends Link {
          * @param size 箭頭大小
          */
         public void renderHollowTriangle(Graphics2D g2d, Point tip, Point tail, int size) {
+            Polygon triangle = createTriangle(tip, tail, size);
+            if (triangle == null) return;
+
+            // 先填充白色背景，再繪製黑色邊框
+            g2d.setColor(Color.WHITE);
+            g2d.fillPolygon(triangle);
+            g2d.setColor(Color.BLACK);
+            g2d.drawPolygon(triangle);
+        }
+
+        /**
+         * 計算三角形箭頭的頂點
+         * @param tip 箭頭尖端
+         * @param tail 箭頭尾部
+         * @param size 箭頭大小
+         * @return 三角形，尖端與尾部重疊時回傳 null
+         */
+        public Polygon createTriangle(Point tip, Point tail, int size) {
             double dx = tip.x - tail.x;
             double dy = tip.y - tail.y;
             double length = Math.sqrt(dx * dx + dy * dy);
 
-            if (length == 0) return;
+            if (length == 0) return null;
 
             double unitDx = dx / length;
             double unitDy = dy / length;
@@ -72,11 +100,7 @@ public class GeneralizationLink extends Link {
             int[] xPoints = {tip.x, x1, x2};
             int[] yPoints = {tip.y, y1, y2};
 
-            // 先填充白色背景，再繪製黑色邊框
-            g2d.setColor(Color.WHITE);
-            g2d.fillPolygon(xPoints, yPoints, 3);
-            g2d.setColor(Color.BLACK);
-            g2d.drawPolygon(xPoints, yPoints, 3);
+            return new Polygon(xPoints, yPoints, 3);
         }
     }
 }
\ No newline at end of file
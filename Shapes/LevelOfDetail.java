@@ -0,0 +1,36 @@
+package Shapes;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+
+/**
+ * 細節層級判斷
+ * 縮小檢視時，標籤、連接埠與箭頭在螢幕上只剩幾個像素，繪製它們沒有意義
+ * 根據 Graphics2D 目前的縮放比例決定是否略過這些細節
+ */
+public final class LevelOfDetail {
+    private static final double MIN_DETAIL_PIXELS = 4.0; // 細節在螢幕上小於此像素數就不繪製
+
+    private LevelOfDetail() {
+    }
+
+    /**
+     * 取得圖形上下文目前的縮放比例
+     * @param g2d 圖形上下文
+     * @return 一個模型單位在螢幕上的像素數
+     */
+    public static double getScale(Graphics2D g2d) {
+        AffineTransform transform = g2d.getTransform();
+        return Math.hypot(transform.getScaleX(), transform.getShearY());
+    }
+
+    /**
+     * 判斷指定大小的細節在螢幕上是否大到值得繪製
+     * @param g2d 圖形上下文
+     * @param modelSize 細節在模型座標中的大小
+     * @return 是否需要繪製
+     */
+    public static boolean isVisible(Graphics2D g2d, double modelSize) {
+        return modelSize * getScale(g2d) >= MIN_DETAIL_PIXELS;
+    }
+}
@@ -2,7 +2,8 @@ package Shapes;
 
 import java.awt.Graphics2D;
 import java.awt.Point;
-import java.util.List;
+import java.awt.Polygon;
+import java.awt.Rectangle;
 
 /**
  * 連結的Abstract Class
@@ -11,26 +12,31 @@ import java.util.List;
  * 處理不同的箭頭繪製方式
  */
 public abstract class Link extends BaseShape {
-    protected Point startPoint;
-    protected Point endPoint;
+    // 端點座標：連接到形狀的端點由 (形狀, 連接埠索引) 推得，這裡只是快取；未連接的端點直接存放座標
+    private final Point startPoint;
+    private final Point endPoint;
     protected BasicShape startShape;
     protected BasicShape endShape;
     // 追踪起始形狀和終止形狀上的連接點索引
     protected int startPortIndex = -1;
     protected int endPortIndex = -1;
+    // 快取端點時形狀的連接埠版本，版本不同才重新讀取連接埠
+    private int startPortVersion = STALE;
+    private int endPortVersion = STALE;
+    private static final int STALE = -1;
     int Distance_GAP = 5;
+    protected static final int ARROW_SIZE = 10; // 箭頭大小
 
-    // 處理距離計算
-    protected DistanceCalculator distanceCalculator;
+    // 處理距離計算，計算器沒有狀態，所有連結共用同一個
+    private static final DistanceCalculator DISTANCE_CALCULATOR = new LineDistanceCalculator();
 
     /**
      * 建構函數
      * @param start 起始點
      */
     public Link(Point start) {
-        this.startPoint = start;
-        this.endPoint = start; // 初始時終點與起點相同
-        this.distanceCalculator = new LineDistanceCalculator();
+        this.startPoint = new Point(start);
+        this.endPoint = new Point(start); // 初始時終點與起點相同
     }
 
     /**
@@ -40,22 +46,38 @@ public abstract class Link extends BaseShape {
      */
     @Override
     public boolean contains(Point p) {
-        double distance = distanceCalculator.calculateDistance(p, startPoint, endPoint);
+        double distance = DISTANCE_CALCULATOR.calculateDistance(p, getStartPoint(), getEndPoint());
         return distance < Distance_GAP;
     }
 
+    /**
+     * 取得連結線的邊界
+     * @return 以起點和終點為對角的矩形
+     */
+    @Override
+    public Rectangle getBounds() {
+        Point startPoint = getStartPoint();
+        Point endPoint = getEndPoint();
+        int x = Math.min(startPoint.x, endPoint.x);
+        int y = Math.min(startPoint.y, endPoint.y);
+        return new Rectangle(x, y, Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
+    }
+
     /**
      * 移動連結線
+     * 連接到形狀的端點跟隨形狀的連接埠，只移動未連接的端點
      * @param dx x軸位移量
      * @param dy y軸位移量
      */
     @Override
     public void move(int dx, int dy) {
-        // 更新連結的起點和終點
-        startPoint.x += dx;
-        startPoint.y += dy;
-        endPoint.x += dx;
-        endPoint.y += dy;
+        if (!isStartResolved()) {
+            startPoint.translate(dx, dy);
+        }
+        if (!isEndResolved()) {
+            endPoint.translate(dx, dy);
+        }
+        boundsChanged();
     }
 
     /**
@@ -70,21 +92,66 @@ public abstract class Link extends BaseShape {
 
     // Getter 和 Setter 方法
     public void setStartPoint(Point start) {
-        this.startPoint = start;
+        startPoint.setLocation(start);
+        startPortVersion = STALE;
+        boundsChanged();
     }
 
     public void setEndPoint(Point end) {
-        this.endPoint = end;
+        endPoint.setLocation(end);
+        endPortVersion = STALE;
+        boundsChanged();
     }
 
+    /**
+     * 取得起點
+     * 連接到形狀時由連接埠推得，形狀移動後第一次讀取才重新計算
+     * @return 起點（連結內部的物件，請勿修改）
+     */
     public Point getStartPoint() {
+        if (isStartResolved()) {
+            int version = startShape.getPortVersion();
+            if (version != startPortVersion) {
+                startPoint.setLocation(startShape.getPortX(startPortIndex), startShape.getPortY(startPortIndex));
+                startPortVersion = version;
+            }
+        }
         return startPoint;
     }
 
+    /**
+     * 取得終點
+     * 連接到形狀時由連接埠推得，形狀移動後第一次讀取才重新計算
+     * @return 終點（連結內部的物件，請勿修改）
+     */
     public Point getEndPoint() {
+        if (isEndResolved()) {
+            int version = endShape.getPortVersion();
+            if (version != endPortVersion) {
+                endPoint.setLocation(endShape.getPortX(endPortIndex), endShape.getPortY(endPortIndex));
+                endPortVersion = version;
+            }
+        }
         return endPoint;
     }
 
+    private boolean isStartResolved() {
+        return startShape != null && startPortIndex >= 0 && startPortIndex < startShape.getPortCount();
+    }
+
+    private boolean isEndResolved() {
+        return endShape != null && endPortIndex >= 0 && endPortIndex < endShape.getPortCount();
+    }
+
+    /**
+     * 檢查形狀是否可作為終點，與 setEndShape 的驗證相同
+     * @param shape 終點形狀
+     * @return 是否為有效的連接
+     */
+    public boolean canEndAt(BasicShape shape) {
+        return startShape == null || LinkValidator.isValidLink(startShape, shape);
+    }
+
     /**
      * 設定終點形狀
      * @param shape 終點形狀
@@ -94,11 +161,19 @@ public abstract class Link extends BaseShape {
         if (this.startShape != null && !LinkValidator.isValidLink(this.startShape, shape)) {
             throw new IllegalArgumentException("無效的連接，不能同一個 port 自己連到自己啦！！！");
         }
+        if (this.endShape != null && this.endShape != startShape) {
+            this.endShape.detachLink(this);
+        }
         this.endShape = shape;
+        this.endPortVersion = STALE;
+        if (shape != null) {
+            shape.attachLink(this);
+        }
         // 找到並記錄對應的連接點索引
-        if (shape != null && endPoint != null) {
+        if (shape != null) {
             findAndSetEndPortIndex();
         }
+        boundsChanged();
     }
 
     /**
@@ -110,117 +185,118 @@ public abstract class Link extends BaseShape {
             throw new IllegalArgumentException("無效的連接，不能同一個 port 自己連到自己啦！！！");
         }
 
+        if (this.startShape != null && this.startShape != endShape) {
+            this.startShape.detachLink(this);
+        }
         this.startShape = shape;
+        this.startPortVersion = STALE;
+        if (shape != null) {
+            shape.attachLink(this);
+        }
         // 找到並記錄對應的連接點索引
-        if (shape != null && startPoint != null) {
+        if (shape != null) {
             findAndSetStartPortIndex();
         }
+        boundsChanged();
     }
 
     /**
-     * 記錄起始連接點的索引
+     * 直接以形狀與連接埠索引設定兩端點
+     * 用於從檔案載入連結，不需要比對連接點座標
+     * @param start 起點形狀
+     * @param startPort 起點形狀上的連接埠索引
+     * @param end 終點形狀
+     * @param endPort 終點形狀上的連接埠索引
      */
-    private void findAndSetStartPortIndex() {
-        if (startShape != null && startPoint != null) {
-            List<Point> ports = startShape.getPorts();
-            for (int i = 0; i < ports.size(); i++) {
-                Point port = ports.get(i);
-                if (port.x == startPoint.x && port.y == startPoint.y) {
-                    startPortIndex = i;
-                    break;
-                }
-            }
+    public void connect(BasicShape start, int startPort, BasicShape end, int endPort) {
+        if (start != null && end != null && !LinkValidator.isValidLink(start, end)) {
+            throw new IllegalArgumentException("無效的連接，不能同一個 port 自己連到自己啦！！！");
         }
-    }
 
-    /**
-     * 記錄終止連接點的索引
-     */
-    private void findAndSetEndPortIndex() {
-        if (endShape != null && endPoint != null) {
-            List<Point> ports = endShape.getPorts();
-            for (int i = 0; i < ports.size(); i++) {
-                Point port = ports.get(i);
-                if (port.x == endPoint.x && port.y == endPoint.y) {
-                    endPortIndex = i;
-                    break;
-                }
-            }
+        detach();
+        this.startShape = start;
+        this.startPortIndex = startPort;
+        this.endShape = end;
+        this.endPortIndex = endPort;
+        this.startPortVersion = STALE;
+        this.endPortVersion = STALE;
+        if (start != null) {
+            start.attachLink(this);
+        }
+        if (end != null) {
+            end.attachLink(this);
         }
+        boundsChanged();
+    }
+
+    public BasicShape getStartShape() {
+        return startShape;
+    }
+
+    public BasicShape getEndShape() {
+        return endShape;
+    }
+
+    public int getStartPortIndex() {
+        return startPortIndex;
+    }
+
+    public int getEndPortIndex() {
+        return endPortIndex;
     }
 
     /**
-     * 更新連結的位置
-     * 當連接的形狀移動時，應該調用此方法更新連結的位置
+     * 將連結從兩端形狀的連結集合中移除
+     * 連結被刪除時呼叫，端點形狀的參考仍保留
      */
-    public void updatePosition() {
-        // 當形狀移動時，我們使用索引來找到相同的連接點
-        if (startShape != null && startPortIndex >= 0 && startPortIndex < startShape.getPorts().size()) {
-            startPoint = startShape.getPorts().get(startPortIndex);
+    public void detach() {
+        if (startShape != null) {
+            startShape.detachLink(this);
         }
-
-        if (endShape != null && endPortIndex >= 0 && endPortIndex < endShape.getPorts().size()) {
-            endPoint = endShape.getPorts().get(endPortIndex);
+        if (endShape != null) {
+            endShape.detachLink(this);
         }
     }
 
     /**
-     * 當形狀移動時，更新連接點位置
-     * @param shape 正在移動的形狀
-     * @param dx x軸位移量
-     * @param dy y軸位移量
+     * 將連結重新加入兩端形狀的連結集合
+     * detach() 的反向操作，復原刪除時呼叫
      */
-    public void updateEndpointForShape(BaseShape shape, int dx, int dy) {
-        // 使用記錄的連接點索引來更新端點位置
-        if (startShape == shape) {
-            updateStartPoint(dx, dy);
+    public void reattach() {
+        if (startShape != null) {
+            startShape.attachLink(this);
         }
-
-        if (endShape == shape) {
-            updateEndPoint(dx, dy);
+        if (endShape != null) {
+            endShape.attachLink(this);
         }
+        boundsChanged(); // 拆離期間端點形狀可能已移動
     }
 
     /**
-     * 更新起始點
-     * @param dx x軸位移量
-     * @param dy y軸位移量
+     * 記錄起始連接點的索引
      */
-    private void updateStartPoint(int dx, int dy) {
-        // 如果還沒有記錄索引，則記錄它
-        if (startPortIndex == -1) {
-            findAndSetStartPortIndex();
-        }
-
-        // 使用索引獲取更新後的連接點位置
-        if (startPortIndex >= 0 && startPortIndex < startShape.getPorts().size()) {
-            startPoint = startShape.getPorts().get(startPortIndex);
-        } else {
-            // 如果找不到索引，則使用偏移
-            startPoint.x += dx;
-            startPoint.y += dy;
-        }
+    private void findAndSetStartPortIndex() {
+        startPortIndex = findPortIndex(startShape, startPoint);
     }
 
     /**
-     * 更新終點
-     * @param dx x軸位移量
-     * @param dy y軸位移量
+     * 記錄終止連接點的索引
      */
-    private void updateEndPoint(int dx, int dy) {
-        // 如果還沒有記錄索引，則記錄它
-        if (endPortIndex == -1) {
-            findAndSetEndPortIndex();
-        }
+    private void findAndSetEndPortIndex() {
+        endPortIndex = findPortIndex(endShape, endPoint);
+    }
 
-        // 使用索引獲取更新後的連接點位置
-        if (endPortIndex >= 0 && endPortIndex < endShape.getPorts().size()) {
-            endPoint = endShape.getPorts().get(endPortIndex);
-        } else {
-            // 如果找不到索引，則使用偏移
-            endPoint.x += dx;
-            endPoint.y += dy;
+    /**
+     * 找出與點座標相同的連接埠索引
+     * @return 連接埠索引，找不到時回傳 -1
+     */
+    private static int findPortIndex(BasicShape shape, Point point) {
+        for (int i = 0; i < shape.getPortCount(); i++) {
+            if (shape.getPortX(i) == point.x && shape.getPortY(i) == point.y) {
+                return i;
+            }
         }
+        return -1;
     }
 
     /**
@@ -239,11 +315,31 @@ public abstract class Link extends BaseShape {
      */
     protected abstract void drawArrowHead(Graphics2D g2d);
 
+    /**
+     * 取得箭頭的多邊形
+     * 與 drawArrowHead 使用相同的幾何計算，供向量匯出等不經過 Graphics2D 的輸出使用
+     * @return 箭頭多邊形，起點與終點重疊時回傳 null
+     */
+    public abstract Polygon getArrowHead();
+
+    /**
+     * 箭頭在螢幕上夠大時才繪製
+     * 縮小檢視時略過箭頭以減少繪製成本
+     * @param g2d 圖形上下文
+     */
+    protected void drawArrowHeadIfVisible(Graphics2D g2d) {
+        if (LevelOfDetail.isVisible(g2d, ARROW_SIZE)) {
+            drawArrowHead(g2d);
+        }
+    }
+
     /**
      * 繪製連結線主體
      * @param g2d 圖形上下文
      */
     protected void drawLine(Graphics2D g2d) {
+        Point startPoint = getStartPoint();
+        Point endPoint = getEndPoint();
         g2d.drawLine(startPoint.x, startPoint.y, endPoint.x, endPoint.y);
     }
 
@@ -258,6 +354,18 @@ public abstract class Link extends BaseShape {
         ArrowRenderer renderer = new StandardArrowRenderer();
         renderer.renderArrow(g2d, tip, tail, size);
     }
+
+    /**
+     * 計算基本箭頭的多邊形
+     * @param tip 箭頭尖端
+     * @param tail 箭頭尾部
+     * @param size 箭頭大小
+     * @return 箭頭多邊形，尖端與尾部重疊時回傳 null
+     */
+    protected Polygon createArrow(Point tip, Point tail, int size) {
+        ArrowRenderer renderer = new StandardArrowRenderer();
+        return renderer.createArrow(tip, tail, size);
+    }
     /**
      * 距離計算interface
      * 處理距離計算
@@ -303,6 +411,7 @@ public abstract class Link extends BaseShape {
      */
     private interface ArrowRenderer {
         void renderArrow(Graphics2D g2d, Point tip, Point tail, int size);
+        Polygon createArrow(Point tip, Point tail, int size);
     }
 
     /**
@@ -311,11 +420,19 @@ public abstract class Link extends BaseShape {
     private static class StandardArrowRenderer implements ArrowRenderer {
         @Override
         public void renderArrow(Graphics2D g2d, Point tip, Point tail, int size) {
+            Polygon arrow = createArrow(tip, tail, size);
+            if (arrow != null) {
+                g2d.fillPolygon(arrow);
+            }
+        }
+
+        @Override
+        public Polygon createArrow(Point tip, Point tail, int size) {
             double dx = tip.x - tail.x;
             double dy = tip.y - tail.y;
             double length = Math.sqrt(dx * dx + dy * dy);
 
-            if (length == 0) return;
+            if (length == 0) return null;
 
             double unitDx = dx / length;
             double unitDy = dy / length;
@@ -329,7 +446,7 @@ public abstract class Link extends BaseShape {
             int[] xPoints = {tip.x, x1, x2};
             int[] yPoints = {tip.y, y1, y2};
 
-            g2d.fillPolygon(xPoints, yPoints, 3);
+            return new Polygon(xPoints, yPoints, 3);
         }
     }
 
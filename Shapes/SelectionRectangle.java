@@ -83,6 +83,15 @@ public class SelectionRectangle extends BaseShape {
         return rectangle;
     }
 
+    /**
+     * 取得邊界
+     * @return 選取矩形
+     */
+    @Override
+    public Rectangle getBounds() {
+        return rectangle;
+    }
+
     /**
      * 選取樣式interface
      * 處理不同的選取框繪製方式
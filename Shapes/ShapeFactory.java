@@ -105,7 +105,11 @@ public class ShapeFactory {
      * 使用模板方法模式實現特殊的矩形樣式
      */
     public static class CustomRectShape extends BasicShape {
-        private CustomDrawingStrategy drawingStrategy;
+        // 固定大小的外觀只需繪製一次
+        private static final ShapeSprite SPRITE = new ShapeSprite(RECT_WIDTH, RECT_HEIGHT,
+                g2d -> UMLClassDrawingStrategy.drawBody(g2d, new Rectangle(0, 0, RECT_WIDTH, RECT_HEIGHT)));
+
+        private static final CustomDrawingStrategy DRAWING_STRATEGY = new UMLClassDrawingStrategy(); // 沒有狀態，所有形狀共用
 
         /**
          * 建構函數
@@ -115,7 +119,6 @@ public class ShapeFactory {
             super(start);
             // 設定固定大小
             bounds = new Rectangle(start.x, start.y, RECT_WIDTH, RECT_HEIGHT);
-            drawingStrategy = new UMLClassDrawingStrategy();
             updatePorts();
         }
 
@@ -125,7 +128,7 @@ public class ShapeFactory {
          */
         @Override
         public void draw(Graphics2D g2d) {
-            drawingStrategy.draw(g2d, bounds, this);
+            DRAWING_STRATEGY.draw(g2d, bounds, this);
         }
 
         /**
@@ -148,10 +151,21 @@ public class ShapeFactory {
          */
         @Override
         public void updatePorts() {
-            ports.clear();
             // 8個連接埠
-            PortGenerator generator = new RectanglePortGenerator();
-            ports.addAll(generator.generatePorts(bounds));
+            RECTANGLE_PORTS.generatePorts(bounds, this);
+        }
+
+        /**
+         * 取得兩條分隔線的 y 座標
+         * @return 分隔線的 y 座標（由上而下）
+         */
+        public int[] getSeparatorYs() {
+            return separatorYs(bounds);
+        }
+
+        private static int[] separatorYs(Rectangle bounds) {
+            int lineSpacing = bounds.height / 3;
+            return new int[]{bounds.y + lineSpacing, bounds.y + 2 * lineSpacing};
         }
 
         /**
@@ -167,6 +181,20 @@ public class ShapeFactory {
         private static class UMLClassDrawingStrategy implements CustomDrawingStrategy {
             @Override
             public void draw(Graphics2D g2d, Rectangle bounds, BasicShape shape) {
+                // 一般檢視直接貼上預先繪製的外觀，縮放時才以向量繪製
+                if (!SPRITE.draw(g2d, bounds.x, bounds.y)) {
+                    drawBody(g2d, bounds);
+                }
+
+                // 繪製標籤和連接埠
+                shape.drawLabel(g2d);
+                shape.drawPorts(g2d);
+            }
+
+            /**
+             * 以向量繪製外框與分隔線
+             */
+            static void drawBody(Graphics2D g2d, Rectangle bounds) {
                 // 繪製矩形外框
                 g2d.setColor(Color.LIGHT_GRAY);
                 g2d.fillRect(bounds.x, bounds.y, bounds.width, bounds.height);
@@ -175,19 +203,13 @@ public class ShapeFactory {
                 g2d.drawRect(bounds.x, bounds.y, bounds.width, bounds.height);
 
                 // 繪製兩條橫線（UML類別圖的分隔線）
-                drawSeparatorLines(g2d, bounds);
-
-                // 繪製標籤和連接埠
-                shape.drawLabel(g2d);
-                shape.drawPorts(g2d);
+                drawSeparatorLines(g2d, bounds, separatorYs(bounds));
             }
 
-            private void drawSeparatorLines(Graphics2D g2d, Rectangle bounds) {
-                int lineSpacing = bounds.height / 3;
-                g2d.drawLine(bounds.x, bounds.y + lineSpacing,
-                        bounds.x + bounds.width, bounds.y + lineSpacing);
-                g2d.drawLine(bounds.x, bounds.y + 2 * lineSpacing,
-                        bounds.x + bounds.width, bounds.y + 2 * lineSpacing);
+            private static void drawSeparatorLines(Graphics2D g2d, Rectangle bounds, int[] separatorYs) {
+                for (int y : separatorYs) {
+                    g2d.drawLine(bounds.x, y, bounds.x + bounds.width, y);
+                }
             }
         }
     }
@@ -196,6 +218,12 @@ public class ShapeFactory {
      * 自定義橢圓類別 - 固定大小
      */
     public static class CustomOvalShape extends OvalShape {
+        // 固定大小的外觀只需繪製一次，以原點的一般橢圓作為樣板
+        private static final ShapeSprite SPRITE = new ShapeSprite(OVAL_WIDTH, OVAL_HEIGHT, g2d -> {
+            OvalShape prototype = new OvalShape(new Point(0, 0));
+            prototype.resize(new Point(0, 0), new Point(OVAL_WIDTH, OVAL_HEIGHT));
+            prototype.drawBody(g2d);
+        });
 
         /**
          * 建構函數
@@ -205,7 +233,7 @@ public class ShapeFactory {
             super(start);
             // 設定固定大小
             bounds = new Rectangle(start.x, start.y, OVAL_WIDTH, OVAL_HEIGHT);
-            ellipse = new java.awt.geom.Ellipse2D.Double(bounds.x, bounds.y, bounds.width, bounds.height);
+            ellipse.setFrame(bounds);
             updatePorts();
         }
 
@@ -221,45 +249,56 @@ public class ShapeFactory {
             bounds.y = start.y;
             bounds.width = OVAL_WIDTH;
             bounds.height = OVAL_HEIGHT;
-            ellipse = new java.awt.geom.Ellipse2D.Double(bounds.x, bounds.y, bounds.width, bounds.height);
+            ellipse.setFrame(bounds);
             updatePorts();
         }
 
+        /**
+         * 一般檢視直接貼上預先繪製的外觀，縮放時才以向量繪製
+         * @param g2d 圖形上下文
+         */
+        @Override
+        protected void drawBody(Graphics2D g2d) {
+            if (!SPRITE.draw(g2d, bounds.x, bounds.y)) {
+                super.drawBody(g2d);
+            }
+        }
+
         /**
          * 更新連接埠
          */
         @Override
         public void updatePorts() {
-            ports.clear();
-            PortGenerator generator = new OvalPortGenerator();
-            ports.addAll(generator.generatePorts(bounds));
+            OVAL_PORTS.generatePorts(bounds, this);
         }
     }
 
     /**
      * 連接埠生成 interface
-     * 處理不同形狀的連接埠生成
+     * 處理不同形狀的連接埠生成，直接把座標寫回形狀，不配置新的 Point
      */
     private interface PortGenerator {
-        java.util.List<Point> generatePorts(Rectangle bounds);
+        void generatePorts(Rectangle bounds, BasicShape shape);
     }
 
+    private static final PortGenerator RECTANGLE_PORTS = new RectanglePortGenerator();
+    private static final PortGenerator OVAL_PORTS = new OvalPortGenerator();
+
     /**
      * 實際矩形連接埠生成器
      */
     private static class RectanglePortGenerator implements PortGenerator {
         @Override
-        public java.util.List<Point> generatePorts(Rectangle bounds) {
-            java.util.List<Point> ports = new java.util.ArrayList<>();
-            ports.add(new Point(bounds.x, bounds.y)); // 左上
-            ports.add(new Point(bounds.x + bounds.width / 2, bounds.y)); // 上中
-            ports.add(new Point(bounds.x + bounds.width, bounds.y)); // 右上
-            ports.add(new Point(bounds.x, bounds.y + bounds.height / 2)); // 左中
-            ports.add(new Point(bounds.x + bounds.width, bounds.y + bounds.height / 2)); // 右中
-            ports.add(new Point(bounds.x, bounds.y + bounds.height)); // 左下
-            ports.add(new Point(bounds.x + bounds.width / 2, bounds.y + bounds.height)); // 下中
-            ports.add(new Point(bounds.x + bounds.width, bounds.y + bounds.height)); // 右下
-            return ports;
+        public void generatePorts(Rectangle bounds, BasicShape shape) {
+            shape.setPortCount(8);
+            shape.setPort(0, bounds.x, bounds.y); // 左上
+            shape.setPort(1, bounds.x + bounds.width / 2, bounds.y); // 上中
+            shape.setPort(2, bounds.x + bounds.width, bounds.y); // 右上
+            shape.setPort(3, bounds.x, bounds.y + bounds.height / 2); // 左中
+            shape.setPort(4, bounds.x + bounds.width, bounds.y + bounds.height / 2); // 右中
+            shape.setPort(5, bounds.x, bounds.y + bounds.height); // 左下
+            shape.setPort(6, bounds.x + bounds.width / 2, bounds.y + bounds.height); // 下中
+            shape.setPort(7, bounds.x + bounds.width, bounds.y + bounds.height); // 右下
         }
     }
 
@@ -268,13 +307,12 @@ public class ShapeFactory {
      */
     private static class OvalPortGenerator implements PortGenerator {
         @Override
-        public java.util.List<Point> generatePorts(Rectangle bounds) {
-            java.util.List<Point> ports = new java.util.ArrayList<>();
-            ports.add(new Point(bounds.x + bounds.width / 2, bounds.y)); // 上
-            ports.add(new Point(bounds.x, bounds.y + bounds.height / 2)); // 左
-            ports.add(new Point(bounds.x + bounds.width, bounds.y + bounds.height / 2)); // 右
-            ports.add(new Point(bounds.x + bounds.width / 2, bounds.y + bounds.height)); // 下
-            return ports;
+        public void generatePorts(Rectangle bounds, BasicShape shape) {
+            shape.setPortCount(4);
+            shape.setPort(0, bounds.x + bounds.width / 2, bounds.y); // 上
+            shape.setPort(1, bounds.x, bounds.y + bounds.height / 2); // 左
+            shape.setPort(2, bounds.x + bounds.width, bounds.y + bounds.height / 2); // 右
+            shape.setPort(3, bounds.x + bounds.width / 2, bounds.y + bounds.height); // 下
         }
     }
 }
\ No newline at end of file
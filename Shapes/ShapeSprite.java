@@ -0,0 +1,84 @@
+package Shapes;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+/**
+ * 預先繪製的形狀影像
+ * 固定大小的形狀外觀（背景、邊框、分隔線）每次都相同，第一次使用時繪製成一張影像，之後直接貼上
+ *
+ * 只在一個模型單位等於一個像素、且只有整數平移時貼上影像，此時結果與向量繪製逐像素相同；
+ * 縮放、反鋸齒或非點陣輸出（例如列印）時回傳 false，由呼叫端改用向量繪製
+ */
+final class ShapeSprite {
+    private final int width;
+    private final int height;
+    private final Consumer<Graphics2D> painter; // 以 (0, 0) 為左上角繪製外觀
+    private volatile BufferedImage image;
+
+    /**
+     * @param width 形狀寬度
+     * @param height 形狀高度
+     * @param painter 以 (0, 0) 為左上角繪製形狀外觀
+     */
+    ShapeSprite(int width, int height, Consumer<Graphics2D> painter) {
+        this.width = width;
+        this.height = height;
+        this.painter = painter;
+    }
+
+    /**
+     * 在指定位置貼上形狀外觀
+     * @param g2d 圖形上下文
+     * @param x 形狀左上角的 x 座標
+     * @param y 形狀左上角的 y 座標
+     * @return 是否已貼上，回傳 false 時呼叫端需以向量繪製
+     */
+    boolean draw(Graphics2D g2d, int x, int y) {
+        if (!isPixelExact(g2d)) {
+            return false;
+        }
+        g2d.drawImage(getImage(), x, y, null);
+        return true;
+    }
+
+    /**
+     * 判斷貼上影像是否與向量繪製的結果相同
+     */
+    private static boolean isPixelExact(Graphics2D g2d) {
+        AffineTransform transform = g2d.getTransform();
+        if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0
+                || transform.getTranslateX() != Math.rint(transform.getTranslateX())
+                || transform.getTranslateY() != Math.rint(transform.getTranslateY())) {
+            return false;
+        }
+        if (g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING) == RenderingHints.VALUE_ANTIALIAS_ON) {
+            return false;
+        }
+        int deviceType = g2d.getDeviceConfiguration().getDevice().getType();
+        return deviceType == GraphicsDevice.TYPE_IMAGE_BUFFER || deviceType == GraphicsDevice.TYPE_RASTER_SCREEN;
+    }
+
+    private BufferedImage getImage() {
+        BufferedImage result = image;
+        if (result == null) {
+            synchronized (this) {
+                result = image;
+                if (result == null) {
+                    // 邊框線條會多佔一個像素
+                    result = new BufferedImage(width + 1, height + 1, BufferedImage.TYPE_INT_ARGB);
+                    Graphics2D g2d = result.createGraphics();
+                    try {
+                        painter.accept(g2d);
+                    } finally {
+                        g2d.dispose();
+                    }
+                    image = result;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -1,8 +1,12 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import MenuBar.MenuBar;
 import ToolBar.ToolBar;
 import Canvas.CanvasPanel;
+import Persistence.AutosaveJournal;
+import Persistence.Diagram;
 
 /**
  * UML編輯器
@@ -17,6 +21,7 @@ public class UMLEditor {
     private ToolBar toolbar; // 工具欄
     private MenuBar menuBar; // 選單欄
     private UIThemeManager uiThemeManager; // UI主題管理器（重新命名避免衝突）
+    private AutosaveJournal autosaveJournal; // 自動儲存日誌，無法使用時為 null
 
     /**
      * 建構函數（單例模式）
@@ -85,9 +90,56 @@ public class UMLEditor {
         WindowConfigurator configurator = new WindowConfigurator();
         configurator.configureWindow(frame);
 
+        startAutosave(frame);
         return frame;
     }
 
+    /**
+     * 啟動自動儲存
+     * 在背景讀取上次留下的日誌，若上次沒有正常結束則詢問是否復原，之後開始記錄畫布的變動
+     * @param frame 應用程式窗口
+     */
+    private void startAutosave(JFrame frame) {
+        // 正常關閉窗口時刪除日誌
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (autosaveJournal != null) {
+                    autosaveJournal.close(true);
+                }
+            }
+        });
+
+        new SwingWorker<AutosaveJournal, Void>() {
+            @Override
+            protected AutosaveJournal doInBackground() throws Exception {
+                return AutosaveJournal.open(AutosaveJournal.defaultDirectory());
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    autosaveJournal = get();
+                } catch (Exception e) {
+                    System.err.println("無法啟動自動儲存: " + e.getMessage());
+                    return;
+                }
+                if (autosaveJournal == null) {
+                    return; // 自動儲存目錄正被其他編輯器使用
+                }
+
+                Diagram recovered = autosaveJournal.getRecoveredDiagram();
+                if (recovered != null && JOptionPane.showConfirmDialog(frame,
+                        "上次編輯沒有正常結束，是否復原未儲存的內容？",
+                        "復原", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+                    canvasPanel.loadShapes(recovered.getShapes(), recovered.getNextDepth());
+                }
+                autosaveJournal.start();
+                canvasPanel.setChangeJournal(autosaveJournal);
+            }
+        }.execute();
+    }
+
     /**
      * 取得主面板
      * @return 主面板
@@ -0,0 +1,53 @@
+package Canvas;
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import Shapes.*;
+
+/**
+ * 巢狀群組的移動與點擊判斷效能測試
+ * 每一層群組有 4 個成員，depth 層共有 4^depth 個形狀
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CompositeShapeBenchmark {
+    private static final int FANOUT = 4;
+
+    @Param({"1", "4", "8"})
+    int depth;
+
+    private CompositeShape group;
+    private Point lastShapeCenter; // 最後加入的形狀，需走訪整棵樹才會找到
+    private Point gap; // 群組範圍內但不在任何形狀上的點
+    private int direction = 1;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        group = DiagramGenerator.nestedGroup(depth, FANOUT);
+        int leaves = (int) Math.pow(FANOUT, depth);
+        int columns = (int) Math.ceil(Math.sqrt(leaves));
+        lastShapeCenter = DiagramGenerator.cellOrigin((leaves - 1) % columns, (leaves - 1) / columns);
+        lastShapeCenter.translate(50, 30);
+        gap = DiagramGenerator.emptyPoint(0, 0);
+    }
+
+    @Benchmark
+    public void move() {
+        group.move(direction, 0);
+        direction = -direction;
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return group.contains(lastShapeCenter);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return group.contains(gap);
+    }
+}
@@ -0,0 +1,109 @@
+package Canvas;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import Shapes.*;
+
+/**
+ * 效能測試用的圖形產生器
+ * 產生排成格狀的形狀，同一列相鄰的形狀之間以連結相連
+ * 相同的參數與亂數種子會產生相同的圖形
+ */
+final class DiagramGenerator {
+    static final int SPACING = 150; // 格子間距，形狀之間留有空白方便點擊空白處
+
+    private DiagramGenerator() {
+    }
+
+    /**
+     * 產生平面的圖形
+     * 約一半是形狀、一半是連結
+     * @param elements 元素總數
+     * @param seed 亂數種子
+     * @return 依繪製順序排列的頂層元素
+     */
+    static List<BaseShape> generate(int elements, long seed) {
+        Random random = new Random(seed);
+        int shapeCount = Math.max(1, (elements + 1) / 2);
+        int columns = (int) Math.ceil(Math.sqrt(shapeCount));
+
+        List<BaseShape> result = new ArrayList<>(elements);
+        BasicShape previous = null;
+        for (int i = 0; i < shapeCount; i++) {
+            BasicShape shape = createShape(i, random, cellOrigin(i % columns, i / columns));
+            result.add(shape);
+            if (previous != null && i % columns != 0 && result.size() < elements) {
+                result.add(createLink(i, previous, shape));
+            }
+            previous = shape;
+        }
+        return result;
+    }
+
+    /**
+     * 產生巢狀群組
+     * 最內層每個群組包含 fanout 個形狀，每一層再包含 fanout 個下一層的群組
+     * @param depth 巢狀層數
+     * @param fanout 每個群組的成員數
+     * @return 最外層的群組
+     */
+    static CompositeShape nestedGroup(int depth, int fanout) {
+        int[] counter = {0};
+        return nestedGroup(depth, fanout, counter, (int) Math.ceil(Math.sqrt(Math.pow(fanout, depth))));
+    }
+
+    private static CompositeShape nestedGroup(int depth, int fanout, int[] counter, int columns) {
+        CompositeShape group = new CompositeShape();
+        for (int i = 0; i < fanout; i++) {
+            if (depth <= 1) {
+                int index = counter[0]++;
+                group.addShape(new ShapeFactory.CustomRectShape(cellOrigin(index % columns, index / columns)));
+            } else {
+                group.addShape(nestedGroup(depth - 1, fanout, counter, columns));
+            }
+        }
+        return group;
+    }
+
+    /**
+     * 取得格子左上角的座標
+     */
+    static Point cellOrigin(int column, int row) {
+        return new Point(column * SPACING, row * SPACING);
+    }
+
+    /**
+     * 取得格子中沒有形狀的位置
+     */
+    static Point emptyPoint(int column, int row) {
+        return new Point(column * SPACING + SPACING - 20, row * SPACING + SPACING - 20);
+    }
+
+    private static BasicShape createShape(int index, Random random, Point origin) {
+        BasicShape shape = index % 2 == 0
+                ? new ShapeFactory.CustomRectShape(origin)
+                : new ShapeFactory.CustomOvalShape(origin);
+        shape.setDepth(index);
+        if (random.nextInt(3) == 0) {
+            shape.setName("Class" + index);
+        }
+        return shape;
+    }
+
+    private static Link createLink(int index, BasicShape start, BasicShape end) {
+        Link link;
+        switch (index % 3) {
+            case 0:
+                link = new AssociationLink(new Point());
+                break;
+            case 1:
+                link = new GeneralizationLink(new Point());
+                break;
+            default:
+                link = new CompositionLink(new Point());
+        }
+        link.connect(start, 1, end, 3);
+        return link;
+    }
+}
@@ -0,0 +1,51 @@
+package Canvas;
+import java.awt.*;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import Shapes.*;
+
+/**
+ * 移動形狀後更新相連連結的效能測試
+ * 一個中心形狀連接到多個其他形狀，每次移動中心形狀後取得相關連結並讀取其端點
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LinkUpdaterBenchmark {
+    @Param({"1", "100", "10000"})
+    int links;
+
+    private final LinkUpdater linkUpdater = new LinkUpdater();
+    private BasicShape hub;
+    private int direction = 1;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        hub = new ShapeFactory.CustomRectShape(new Point(0, 0));
+        int columns = (int) Math.ceil(Math.sqrt(links));
+        for (int i = 0; i < links; i++) {
+            BasicShape other = new ShapeFactory.CustomRectShape(DiagramGenerator.cellOrigin(i % columns + 1, i / columns + 1));
+            Link link = new AssociationLink(new Point());
+            link.connect(hub, 2, other, 0);
+        }
+    }
+
+    @Benchmark
+    public Object moveHub() {
+        hub.move(direction, 0);
+        Set<Link> relatedLinks = Collections.newSetFromMap(new IdentityHashMap<>());
+        linkUpdater.collectLinks(hub, relatedLinks);
+        long sum = 0;
+        for (Link link : relatedLinks) {
+            sum += link.getStartPoint().x; // 端點在讀取時才由連接埠推得
+        }
+        direction = -direction;
+        return sum;
+    }
+}
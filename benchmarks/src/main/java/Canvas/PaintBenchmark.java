@@ -0,0 +1,46 @@
+package Canvas;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * 畫布繪製效能測試
+ * 不需要顯示視窗，直接將 CanvasPanel 繪製到 1920x1080 的影像
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+
+    @Param({"100", "10000", "1000000"})
+    int elements;
+
+    private CanvasPanel canvas;
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        canvas = new CanvasPanel();
+        canvas.setSize(WIDTH, HEIGHT);
+        canvas.loadShapes(DiagramGenerator.generate(elements, 42), elements);
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        Graphics2D g2d = image.createGraphics();
+        try {
+            g2d.setClip(0, 0, WIDTH, HEIGHT);
+            canvas.paint(g2d);
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+}
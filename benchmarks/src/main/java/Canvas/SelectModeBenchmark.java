@@ -0,0 +1,94 @@
+package Canvas;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * 選取模式的滑鼠操作效能測試
+ * 透過 CanvasPanel 的滑鼠事件處理，包含索引查詢、局部重繪與背景影像的成本
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SelectModeBenchmark {
+    @Param({"100", "10000", "1000000"})
+    int elements;
+
+    private CanvasPanel canvas;
+    private MouseEvent pressOnShape;
+    private MouseEvent pressOnEmpty;
+    private MouseEvent marqueeDrag;
+    private MouseEvent marqueeRelease;
+    private MouseEvent[] dragSteps;
+    private int dragStep = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        canvas = new CanvasPanel();
+        canvas.setSize(1920, 1080);
+        canvas.loadShapes(DiagramGenerator.generate(elements, 42), elements);
+
+        Point shapeCenter = DiagramGenerator.cellOrigin(1, 1);
+        shapeCenter.translate(50, 30);
+        pressOnShape = mouseEvent(MouseEvent.MOUSE_PRESSED, shapeCenter);
+
+        // 從空白處拉出約 4x4 格的選取框
+        Point emptyStart = DiagramGenerator.emptyPoint(0, 0);
+        Point emptyEnd = DiagramGenerator.emptyPoint(4, 4);
+        pressOnEmpty = mouseEvent(MouseEvent.MOUSE_PRESSED, emptyStart);
+        marqueeDrag = mouseEvent(MouseEvent.MOUSE_DRAGGED, emptyEnd);
+        marqueeRelease = mouseEvent(MouseEvent.MOUSE_RELEASED, emptyEnd);
+
+        // 拖曳時來回移動，形狀不會越移越遠
+        dragSteps = new MouseEvent[]{
+                mouseEvent(MouseEvent.MOUSE_DRAGGED, new Point(shapeCenter.x + 1, shapeCenter.y)),
+                mouseEvent(MouseEvent.MOUSE_DRAGGED, shapeCenter)
+        };
+    }
+
+    /**
+     * 每輪測試前先按下形狀，拖曳測試在按住的狀態下進行
+     */
+    @Setup(Level.Iteration)
+    public void pressShape() {
+        canvas.handleMousePressed(pressOnShape);
+    }
+
+    /**
+     * 點擊形狀並選取
+     */
+    @Benchmark
+    public void press(Blackhole blackhole) {
+        canvas.handleMousePressed(pressOnShape);
+        blackhole.consume(canvas.getSelectedShapes().size());
+    }
+
+    /**
+     * 拖曳已選取的形狀一個像素，包含相連連結的更新
+     */
+    @Benchmark
+    public void drag() {
+        canvas.handleMouseDragged(dragSteps[dragStep]);
+        dragStep ^= 1;
+    }
+
+    /**
+     * 按下空白處、拉出選取框並放開
+     */
+    @Benchmark
+    public void marquee(Blackhole blackhole) {
+        canvas.handleMousePressed(pressOnEmpty);
+        canvas.handleMouseDragged(marqueeDrag);
+        canvas.handleMouseReleased(marqueeRelease);
+        blackhole.consume(canvas.getSelectedShapes().size());
+    }
+
+    private MouseEvent mouseEvent(int id, Point point) {
+        return new MouseEvent(canvas, id, 0, 0, point.x, point.y, 1, false, MouseEvent.BUTTON1);
+    }
+}
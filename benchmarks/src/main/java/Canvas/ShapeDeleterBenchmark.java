@@ -0,0 +1,46 @@
+package Canvas;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import Shapes.*;
+
+/**
+ * 刪除選取形狀（與其連結）的效能測試
+ * 每次刪除都會修改圖形，因此每次呼叫前重新產生圖形，以單次執行時間計算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ShapeDeleterBenchmark {
+    @Param({"100", "10000", "1000000"})
+    int elements;
+
+    @Param({"0.01"})
+    double deleteRatio; // 被刪除的形狀比例
+
+    private final ShapeDeleter shapeDeleter = new ShapeDeleter();
+    private List<BaseShape> shapes;
+    private List<BaseShape> toDelete;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        shapes = DiagramGenerator.generate(elements, 42);
+        Random random = new Random(7);
+        toDelete = new ArrayList<>();
+        for (BaseShape shape : shapes) {
+            if (shape instanceof BasicShape && random.nextDouble() < deleteRatio) {
+                toDelete.add(shape);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object deleteShapes() {
+        return shapeDeleter.deleteShapes(toDelete, shapes);
+    }
+}